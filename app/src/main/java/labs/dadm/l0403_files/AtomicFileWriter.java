@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.LinkedHashSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Replaces the contents of text files atomically: contents are written to a temporary file
+// in the same folder, which is then renamed over the target file. So, if the app crashes
+// while writing, the target file keeps its previous contents instead of being truncated.
+// How data is forced to the storage device depends on the selected durability policy
+public class AtomicFileWriter {
+
+    // Tag of the messages logged
+    private static final String TAG = "AtomicFileWriter";
+
+    // Data is not forced to the storage device (the system will write it eventually)
+    public static final int DURABILITY_NONE = 0;
+    // Data is forced to the storage device before replacing the target file
+    public static final int DURABILITY_SYNC = 1;
+    // Data appended in place to files (e.g., journals) within a time window is forced at once,
+    // at the end of that window. A crash may lose the appends of the last window, but frequent
+    // appends do not pay the cost of forcing data each time. Files replaced are not grouped:
+    // they are forced before being replaced exactly as with DURABILITY_SYNC, as replacing them
+    // with data not forced yet could leave them empty or torn after a crash
+    public static final int DURABILITY_GROUP_APPENDS = 2;
+
+    // Suffix of the temporary files
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    // Time window (in milliseconds) to group appends before forcing their data
+    private final long commitWindow;
+    // Files appended but whose data has not been forced yet
+    private final LinkedHashSet<File> pending = new LinkedHashSet<>();
+    // Thread forcing the data of the pending files (created on demand)
+    private ScheduledExecutorService committer;
+
+    public AtomicFileWriter(long commitWindow) {
+        this.commitWindow = commitWindow;
+    }
+
+    // Replaces the contents of the target file with the UTF-8 encoded text,
+    // according to the given durability policy (executed on a background thread)
+    public void write(File target, CharSequence content, int durability) throws IOException {
+        write(target, content, durability, false);
+    }
+
+    // Replaces the contents of the target file with the UTF-8 encoded text, compressed
+    // if required, according to the given durability policy (executed on a background thread).
+    // The text is encoded chunk by chunk, so it is never copied as a whole.
+    // Writes are serialized, so concurrent saves never share the temporary file
+    public synchronized void write(File target, CharSequence content, int durability,
+                                   boolean compressed) throws IOException {
+
+        final File temp = new File(target.getPath() + TEMP_SUFFIX);
+        final FileOutputStream fos = new FileOutputStream(temp);
+        try {
+            final CompressedBlockFormat.BlockOutputStream blocks = compressed ?
+                    new CompressedBlockFormat.BlockOutputStream(fos) : null;
+            TextCodec.encode(content, compressed ? blocks : fos);
+            if (compressed) {
+                blocks.finish();
+            }
+            // Force the data to the storage device before it replaces the target file,
+            // as otherwise a crash could replace it with an empty or incomplete file
+            if (durability != DURABILITY_NONE) {
+                fos.getFD().sync();
+            }
+        } catch (IOException e) {
+            fos.close();
+            temp.delete();
+            throw e;
+        }
+        fos.close();
+
+        // Replace the target file (rename is atomic within the same file system)
+        if (!temp.renameTo(target)) {
+            temp.delete();
+            throw new IOException("Cannot replace " + target);
+        }
+    }
+
+    // Adds the file to the group to be forced at the end of the current time window
+    // (used for files appended in place that follow the DURABILITY_GROUP_APPENDS policy)
+    public synchronized void scheduleCommit(File file) {
+        // The commit is already scheduled if there are other files waiting
+        final boolean first = pending.isEmpty();
+        pending.add(file);
+        if (first) {
+            if (committer == null) {
+                committer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    final Thread thread = new Thread(runnable, "group-commit");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            committer.schedule(() -> {
+                try {
+                    flush();
+                } catch (IOException e) {
+                    Log.e(TAG, "Cannot force the files appended", e);
+                }
+            }, commitWindow, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Forces the data of all the pending files to the storage device, skipping those deleted
+    // meanwhile (executed on a background thread)
+    public void flush() throws IOException {
+        final File[] files;
+        synchronized (this) {
+            files = pending.toArray(new File[0]);
+            pending.clear();
+        }
+
+        IOException exception = null;
+        for (File file : files) {
+            try {
+                // Read-only access is enough to force the data, and does not create the file
+                final RandomAccessFile raf;
+                try {
+                    raf = new RandomAccessFile(file, "r");
+                } catch (FileNotFoundException e) {
+                    // Deleted within the time window (e.g., moved or compacted)
+                    continue;
+                }
+                try {
+                    raf.getFD().sync();
+                } finally {
+                    raf.close();
+                }
+            } catch (IOException e) {
+                // Keep forcing the remaining files
+                exception = e;
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+}
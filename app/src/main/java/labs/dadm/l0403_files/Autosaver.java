@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.widget.EditText;
+
+// Saves the contents of an EditText automatically while the user edits them.
+// Edits are debounced, so a burst of keystrokes results in a single write once the user
+// stops typing, and writes never overlap: while a write is in progress, only the latest
+// contents are kept to be written next.
+// Appends to journals are forced in groups, as autosaves happen frequently (files replaced
+// are still forced on each save, see AtomicFileWriter.DURABILITY_GROUP_APPENDS)
+public class Autosaver implements TextWatcher {
+
+    private final EditText editText;
+    private final StorageIO storageIO;
+    private final StorageIO.Callback<Void> errorCallback;
+    // Time (in milliseconds) without edits before saving
+    private final long delay;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable saveRunnable = this::save;
+
+    private boolean enabled;
+    // Whether a save is waiting for the user to stop typing
+    private boolean scheduled;
+    // Destination of the contents (null if it cannot be saved automatically)
+    private StorageBackend backend;
+    // Whether changes are being made by the app, not by the user
+    private boolean ignoring;
+    // Whether a write is in progress
+    private boolean writing;
+    // Latest contents (and their destination) waiting for the write in progress to finish
+    private TextSnapshot nextContent;
+    private StorageBackend nextBackend;
+
+    public Autosaver(EditText editText, StorageIO storageIO, long delay,
+                     StorageIO.Callback<Void> errorCallback) {
+        this.editText = editText;
+        this.storageIO = storageIO;
+        this.delay = delay;
+        this.errorCallback = errorCallback;
+        editText.addTextChangedListener(this);
+    }
+
+    public void setEnabled(boolean enabled) {
+        if (!enabled) {
+            flush();
+        }
+        this.enabled = enabled;
+    }
+
+    // Sets the destination of the following edits, saving any pending edit to the previous one
+    public void setBackend(StorageBackend backend) {
+        flush();
+        this.backend = backend;
+    }
+
+    // Executes the action without considering the changes it makes as edits
+    public void runWithoutSaving(Runnable action) {
+        ignoring = true;
+        try {
+            action.run();
+        } finally {
+            ignoring = false;
+        }
+    }
+
+    // Saves the pending edits (if any) right now
+    public void flush() {
+        if (scheduled) {
+            handler.removeCallbacks(saveRunnable);
+            save();
+        }
+    }
+
+    @Override
+    public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+        // Do nothing
+    }
+
+    @Override
+    public void onTextChanged(CharSequence s, int start, int before, int count) {
+        // Do nothing
+    }
+
+    @Override
+    public void afterTextChanged(Editable s) {
+        if (enabled && !ignoring && backend != null) {
+            // Wait for the user to stop typing before saving
+            handler.removeCallbacks(saveRunnable);
+            handler.postDelayed(saveRunnable, delay);
+            scheduled = true;
+        }
+    }
+
+    // Takes a snapshot of the contents and writes it, or keeps it if a write is in progress.
+    // The snapshot does not copy the contents on the main thread unless they are edited
+    // before being written
+    private void save() {
+        scheduled = false;
+        if (backend == null) {
+            return;
+        }
+        final TextSnapshot content = TextSnapshot.of(editText);
+        if (writing) {
+            // Any previous snapshot waiting to be written is outdated
+            if (nextContent != null) {
+                nextContent.discard();
+            }
+            nextContent = content;
+            nextBackend = backend;
+        } else {
+            write(backend, content);
+        }
+    }
+
+    // Writes the snapshot on a background thread and then the latest one kept (if any)
+    private void write(StorageBackend destination, TextSnapshot content) {
+        writing = true;
+        destination.write(storageIO, content, AtomicFileWriter.DURABILITY_GROUP_APPENDS,
+                new StorageIO.Callback<Void>() {
+                    @Override
+                    public void onSuccess(Void result) {
+                        next();
+                    }
+
+                    @Override
+                    public void onError(Exception e) {
+                        errorCallback.onError(e);
+                        next();
+                    }
+                });
+    }
+
+    // Writes the latest snapshot kept while the previous write was in progress (if any)
+    private void next() {
+        writing = false;
+        if (nextContent != null) {
+            final TextSnapshot content = nextContent;
+            final StorageBackend destination = nextBackend;
+            nextContent = null;
+            nextBackend = null;
+            write(destination, content);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+// Pool of bitmaps no longer used, whose memory is reused to decode new images
+// (BitmapFactory.Options.inBitmap) instead of allocating new bitmaps each time.
+// Bitmaps are grouped in buckets by the bytes they can hold, and the least recently
+// returned ones are discarded once the pool exceeds its limit. Bitmaps held by several
+// users (e.g., a cache and the Views displaying them) are counted, so they only
+// return to the pool once released by all of them. Bitmaps never released (e.g., by operations
+// cancelled) are simply garbage collected (it can be called from any thread)
+public class BitmapPool {
+
+    // A bitmap is not reused to decode images that require less than this fraction of its bytes
+    private static final int MAX_SIZE_MULTIPLE = 2;
+
+    // Decodes the image with the given options (executed on a background thread)
+    public interface Decoder {
+        Bitmap decode(BitmapFactory.Options options) throws IOException;
+    }
+
+    private final long maxBytes;
+    // Bitmaps available, by the number of bytes they can hold
+    private final TreeMap<Integer, ArrayDeque<Bitmap>> buckets = new TreeMap<>();
+    // Bitmaps available, from the least to the most recently returned
+    private final ArrayDeque<Bitmap> order = new ArrayDeque<>();
+    // Number of users holding each bitmap in use (bitmaps are compared by identity)
+    private final WeakHashMap<Bitmap, Integer> holders = new WeakHashMap<>();
+    // Bytes of the bitmaps available
+    private long bytes;
+
+    // Counters to evaluate the effectiveness of the pool
+    private long hits;
+    private long misses;
+    private long discarded;
+
+    public BitmapPool(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    // Decodes the image into a bitmap of the pool, if there is any suitable, or a new one.
+    // The options must include the dimensions of the image (decoded with inJustDecodeBounds)
+    // and the sample size to apply (executed on a background thread)
+    public Bitmap decode(BitmapFactory.Options options, Decoder decoder) throws IOException {
+        final int sampleSize = Math.max(1, options.inSampleSize);
+        final Bitmap.Config config = options.inPreferredConfig != null ?
+                options.inPreferredConfig : Bitmap.Config.ARGB_8888;
+        options.inJustDecodeBounds = false;
+        // Bitmaps decoded are mutable, so they can be reused later
+        options.inMutable = true;
+        options.inBitmap = get(
+                (options.outWidth + sampleSize - 1) / sampleSize,
+                (options.outHeight + sampleSize - 1) / sampleSize,
+                config, sampleSize);
+        final Bitmap reused = options.inBitmap;
+        if (reused == null) {
+            return decoder.decode(options);
+        }
+        Bitmap bitmap = null;
+        try {
+            try {
+                bitmap = decoder.decode(options);
+            } catch (IllegalArgumentException e) {
+                // The image cannot be decoded into that bitmap (e.g., unsupported format)
+                options.inBitmap = null;
+                bitmap = decoder.decode(options);
+            }
+            return bitmap;
+        } finally {
+            // The bitmap can still be reused if the image was not decoded into it
+            // (e.g., it could not be decoded, or the operation was cancelled)
+            if (bitmap != reused) {
+                put(reused);
+            }
+        }
+    }
+
+    // Gets a bitmap of the pool able to hold an image of the given dimensions,
+    // or null if there is none
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config, int sampleSize) {
+        Bitmap bitmap = null;
+        if (Build.VERSION.SDK_INT > 18) {
+            // Any bitmap large enough can be reconfigured to the dimensions of the image
+            final int required = width * height * getBytesPerPixel(config);
+            final Map.Entry<Integer, ArrayDeque<Bitmap>> bucket = buckets.ceilingEntry(required);
+            if (bucket != null && bucket.getKey() <= (long) required * MAX_SIZE_MULTIPLE) {
+                bitmap = bucket.getValue().peekLast();
+            }
+        } else if (sampleSize == 1) {
+            // Bitmaps must match the dimensions of the image exactly
+            final ArrayDeque<Bitmap> bucket = buckets.get(width * height * getBytesPerPixel(config));
+            if (bucket != null) {
+                for (Bitmap candidate : bucket) {
+                    if (candidate.getWidth() == width && candidate.getHeight() == height
+                            && candidate.getConfig() == config) {
+                        bitmap = candidate;
+                        break;
+                    }
+                }
+            }
+        }
+        if (bitmap == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        remove(bitmap);
+        return bitmap;
+    }
+
+    // Returns the bitmap to the pool, unless it is still held by any user
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || holders.containsKey(bitmap)) {
+            return;
+        }
+        final int size = getSize(bitmap);
+        // Only mutable bitmaps can be decoded into
+        if (!bitmap.isMutable() || bitmap.isRecycled() || size > maxBytes
+                || order.contains(bitmap)) {
+            return;
+        }
+        ArrayDeque<Bitmap> bucket = buckets.get(size);
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            buckets.put(size, bucket);
+        }
+        bucket.addLast(bitmap);
+        order.addLast(bitmap);
+        bytes += size;
+        trim(maxBytes);
+    }
+
+    // Adds a user holding the bitmap, so it cannot be reused until released
+    public synchronized void retain(Bitmap bitmap) {
+        final Integer count = holders.get(bitmap);
+        if (count == null) {
+            // It may have been returned to the pool while being obtained by this user
+            if (order.contains(bitmap)) {
+                remove(bitmap);
+            }
+            holders.put(bitmap, 1);
+        } else {
+            holders.put(bitmap, count + 1);
+        }
+    }
+
+    // Removes a user holding the bitmap, which returns to the pool once released by all of them
+    public synchronized void release(Bitmap bitmap) {
+        final Integer count = holders.get(bitmap);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            holders.put(bitmap, count - 1);
+        } else {
+            holders.remove(bitmap);
+            put(bitmap);
+        }
+    }
+
+    // Discards the least recently returned bitmaps until the pool holds at most the given bytes
+    public synchronized void trim(long limit) {
+        while (bytes > limit && !order.isEmpty()) {
+            remove(order.peekFirst());
+            discarded++;
+        }
+    }
+
+    // Discards all the bitmaps available
+    public void clear() {
+        trim(0);
+    }
+
+    // Removes the bitmap from the bitmaps available
+    private void remove(Bitmap bitmap) {
+        final int size = getSize(bitmap);
+        final ArrayDeque<Bitmap> bucket = buckets.get(size);
+        bucket.removeLastOccurrence(bitmap);
+        if (bucket.isEmpty()) {
+            buckets.remove(size);
+        }
+        order.removeLastOccurrence(bitmap);
+        bytes -= size;
+    }
+
+    // Gets the number of bytes the bitmap can hold
+    private static int getSize(Bitmap bitmap) {
+        return Build.VERSION.SDK_INT > 18 ? bitmap.getAllocationByteCount() : bitmap.getByteCount();
+    }
+
+    // ARGB_4444 is deprecated, but images may still be decoded into it
+    @SuppressWarnings("deprecation")
+    private static int getBytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        } else if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        }
+        return 4;
+    }
+
+    // Gets the fraction of requests served by a bitmap of the pool
+    public synchronized double getHitRate() {
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+
+    // Gets the bytes of the bitmaps available
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    // Gets a summary of the usage and effectiveness of the pool
+    @Override
+    public synchronized String toString() {
+        return "BitmapPool{bytes=" + bytes + "/" + maxBytes
+                + ", bitmaps=" + order.size()
+                + ", inUse=" + holders.size()
+                + ", hits=" + hits
+                + ", misses=" + misses
+                + ", hitRate=" + String.format(Locale.US, "%.2f", getHitRate())
+                + ", discarded=" + discarded + "}";
+    }
+}
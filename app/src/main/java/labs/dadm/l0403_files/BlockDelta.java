@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Writes new contents over the last version written by rewriting only the blocks that changed.
+// The bytes written are split into fixed-size blocks whose checksums are compared with those of
+// the same blocks of the last version (kept in memory), so unchanged blocks are not written
+// again, and the tail is truncated or extended as required. The same stream can also write
+// every block sequentially (e.g., when the destination cannot be accessed at random),
+// computing the checksums for the next version.
+// It only depends on java.io and java.nio, so it can be used with any file
+public class BlockDelta {
+
+    // Size of the blocks and checksum of each block of a version of the contents
+    public static class Checksums {
+        public final int blockSize;
+        public final long length;
+        private final long[] hashes;
+
+        Checksums(int blockSize, long length, long[] hashes) {
+            this.blockSize = blockSize;
+            this.length = length;
+            this.hashes = hashes;
+        }
+
+        public int getBlockCount() {
+            return (int) ((length + blockSize - 1) / blockSize);
+        }
+
+        // Whether the block of this version has the given checksum and length
+        boolean matches(int block, long hash, int length) {
+            return block < getBlockCount() && hashes[block] == hash
+                    && Math.min(blockSize, this.length - (long) block * blockSize) == length;
+        }
+    }
+
+    private BlockDelta() {
+    }
+
+    // Gets a stream that writes into the channel only the blocks that differ from those of
+    // the last version, which the channel must currently store
+    public static Writer newDeltaWriter(FileChannel channel, Checksums last) {
+        return new Writer(channel, null, last, last.blockSize);
+    }
+
+    // Gets a stream that writes every block into the given stream, sequentially
+    public static Writer newFullWriter(OutputStream out, int blockSize) {
+        return new Writer(null, out, null, blockSize);
+    }
+
+    // Stream splitting the bytes written into blocks. Once closed, the destination stores
+    // the new contents, whose checksums are available for the next version
+    public static class Writer extends OutputStream {
+
+        private final FileChannel channel;
+        private final OutputStream out;
+        private final Checksums last;
+        private final ByteBuffer block;
+        private long[] hashes = new long[16];
+        private int count;
+        private long length;
+        // Blocks actually written
+        private int written;
+        private boolean closed;
+
+        Writer(FileChannel channel, OutputStream out, Checksums last, int blockSize) {
+            this.channel = channel;
+            this.out = out;
+            this.last = last;
+            this.block = ByteBuffer.allocate(blockSize);
+        }
+
+        @Override
+        public void write(int value) throws IOException {
+            block.put((byte) value);
+            if (!block.hasRemaining()) {
+                flushBlock();
+            }
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            while (length > 0) {
+                final int copied = Math.min(length, block.remaining());
+                block.put(buffer, offset, copied);
+                offset += copied;
+                length -= copied;
+                if (!block.hasRemaining()) {
+                    flushBlock();
+                }
+            }
+        }
+
+        // Computes the checksum of the block completed (or the last one),
+        // and writes it unless the last version already stores it
+        private void flushBlock() throws IOException {
+            final int size = block.position();
+            if (size == 0) {
+                return;
+            }
+            final long hash = new ContentHash().update(block.array(), 0, size).getValue();
+            if (count == hashes.length) {
+                final long[] grown = new long[count * 2];
+                System.arraycopy(hashes, 0, grown, 0, count);
+                hashes = grown;
+            }
+            final int index = count;
+            hashes[count++] = hash;
+
+            if (channel == null) {
+                out.write(block.array(), 0, size);
+                written++;
+                IoMetrics.addBytes(size);
+            } else if (!last.matches(index, hash, size)) {
+                block.flip();
+                long position = (long) index * block.capacity();
+                while (block.hasRemaining()) {
+                    position += channel.write(block, position);
+                }
+                written++;
+                IoMetrics.addBytes(size);
+            }
+            length += size;
+            block.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                flushBlock();
+                // The last version may be longer than the new contents
+                if (channel != null && channel.size() > length) {
+                    channel.truncate(length);
+                }
+            } finally {
+                if (out != null) {
+                    out.close();
+                }
+            }
+        }
+
+        // Gets the checksums of the contents written (once closed)
+        public Checksums getChecksums() {
+            final long[] trimmed = new long[count];
+            System.arraycopy(hashes, 0, trimmed, 0, count);
+            return new Checksums(block.capacity(), length, trimmed);
+        }
+
+        // Gets the number of blocks actually written (once closed)
+        public int getWrittenBlocks() {
+            return written;
+        }
+    }
+}
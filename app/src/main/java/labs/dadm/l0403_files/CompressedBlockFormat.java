@@ -0,0 +1,456 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Stores contents compressed in independent blocks (Deflate), so they can be streamed
+// sequentially or any block can be decompressed on its own. The format is:
+// [magic (int)][version (int)][block size (int)]
+// [stored length (int)][length (int)][CRC32 of the contents (int)][stored bytes] (per block)
+// [-1 (int)][block count (int)][offset in the file (long)][offset in the contents (long)]...
+// [offset of the block count in the file (long)][magic (int)]
+// Blocks that cannot be compressed are stored as they are (stored length equal to length).
+// The magic starts with a byte that cannot start UTF-8 text, so plain text files are
+// never mistaken for compressed ones
+public class CompressedBlockFormat {
+
+    // Values identifying the format
+    private static final int MAGIC = 0x89424C4B;
+    private static final int VERSION = 1;
+    // Bytes of the header
+    private static final int HEADER_SIZE = 4 + 4 + 4;
+    // Bytes of the trailer: offset of the index and magic
+    private static final int TRAILER_SIZE = 8 + 4;
+    // Stored length marking the end of the blocks
+    private static final int END_OF_BLOCKS = -1;
+
+    // Uncompressed bytes per block by default
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+    // Compression level by default (faster compression is preferred on mobile devices)
+    public static final int DEFAULT_LEVEL = Deflater.BEST_SPEED;
+
+    private CompressedBlockFormat() {
+    }
+
+    // Whether the file is stored in this format
+    public static boolean isCompressed(File file) throws IOException {
+        final FileInputStream fis = new FileInputStream(file);
+        try {
+            final byte[] magic = new byte[4];
+            return fis.read(magic) == 4 && isMagic(magic, 0);
+        } finally {
+            fis.close();
+        }
+    }
+
+    // Whether the file opened is stored in this format (its position is not modified)
+    public static boolean isCompressed(FileChannel channel) throws IOException {
+        final ByteBuffer magic = ByteBuffer.allocate(4);
+        int read;
+        do {
+            read = channel.read(magic, magic.position());
+        } while (read > 0 && magic.hasRemaining());
+        return !magic.hasRemaining() && isMagic(magic.array(), 0);
+    }
+
+    // Whether the contents are stored in this format
+    public static boolean isCompressed(byte[] contents) {
+        return contents.length >= HEADER_SIZE && isMagic(contents, 0);
+    }
+
+    // Gets a stream to read the uncompressed contents if the stream is in this format,
+    // or the stream itself (buffered if required to detect the format) otherwise
+    public static InputStream decompressIfNeeded(InputStream in) throws IOException {
+        final InputStream buffered = in.markSupported() ? in : new BufferedInputStream(in);
+        buffered.mark(4);
+        final byte[] magic = new byte[4];
+        int read = 0;
+        int count;
+        while (read < magic.length
+                && (count = buffered.read(magic, read, magic.length - read)) != -1) {
+            read += count;
+        }
+        buffered.reset();
+        return read == magic.length && isMagic(magic, 0) ? new BlockInputStream(buffered) : buffered;
+    }
+
+    private static boolean isMagic(byte[] bytes, int offset) {
+        return ByteBuffer.wrap(bytes, offset, 4).getInt() == MAGIC;
+    }
+
+    // Compresses the bytes written in blocks. Once every byte has been written, finish()
+    // must be called (or the stream closed) to write the index of the blocks
+    public static class BlockOutputStream extends OutputStream {
+
+        private final DataOutputStream out;
+        private final Deflater deflater;
+        private final CRC32 crc = new CRC32();
+        // Contents of the current block
+        private final byte[] block;
+        private int length;
+        // Compressed contents of the current block
+        private final byte[] compressed;
+        // Offsets of each block in the file and in the contents
+        private long[] fileOffsets = new long[16];
+        private long[] offsets = new long[16];
+        private int blocks;
+        private long written;
+        private long position;
+        private boolean finished;
+
+        public BlockOutputStream(OutputStream out) throws IOException {
+            this(out, DEFAULT_BLOCK_SIZE, DEFAULT_LEVEL);
+        }
+
+        public BlockOutputStream(OutputStream out, int blockSize, int level) throws IOException {
+            this.out = new DataOutputStream(out);
+            this.deflater = new Deflater(level, true);
+            this.block = new byte[blockSize];
+            this.compressed = new byte[blockSize];
+            this.out.writeInt(MAGIC);
+            this.out.writeInt(VERSION);
+            this.out.writeInt(blockSize);
+            written = HEADER_SIZE;
+        }
+
+        @Override
+        public void write(int value) throws IOException {
+            if (length == block.length) {
+                writeBlock();
+            }
+            block[length++] = (byte) value;
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int count) throws IOException {
+            while (count > 0) {
+                if (length == block.length) {
+                    writeBlock();
+                }
+                final int copied = Math.min(count, block.length - length);
+                System.arraycopy(buffer, offset, block, length, copied);
+                length += copied;
+                offset += copied;
+                count -= copied;
+            }
+        }
+
+        // Compresses and writes the current block
+        private void writeBlock() throws IOException {
+            if (length == 0) {
+                return;
+            }
+            deflater.reset();
+            deflater.setInput(block, 0, length);
+            deflater.finish();
+            // Stop as soon as the compressed block is not smaller than the original one
+            int stored = 0;
+            while (!deflater.finished() && stored < length) {
+                stored += deflater.deflate(compressed, stored, compressed.length - stored);
+            }
+            // Keep the block as it is if it cannot be compressed
+            final boolean raw = !deflater.finished() || stored >= length;
+            if (raw) {
+                stored = length;
+            }
+            crc.reset();
+            crc.update(block, 0, length);
+
+            if (blocks == offsets.length) {
+                fileOffsets = Arrays.copyOf(fileOffsets, blocks * 2);
+                offsets = Arrays.copyOf(offsets, blocks * 2);
+            }
+            fileOffsets[blocks] = written;
+            offsets[blocks] = position;
+            blocks++;
+
+            out.writeInt(stored);
+            out.writeInt(length);
+            out.writeInt((int) crc.getValue());
+            out.write(raw ? block : compressed, 0, stored);
+            written += 4 + 4 + 4 + stored;
+            position += length;
+            length = 0;
+        }
+
+        // Writes the last block and the index of the blocks, without closing the stream
+        public void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            writeBlock();
+            out.writeInt(END_OF_BLOCKS);
+            final long indexOffset = written + 4;
+            out.writeInt(blocks);
+            for (int i = 0; i < blocks; i++) {
+                out.writeLong(fileOffsets[i]);
+                out.writeLong(offsets[i]);
+            }
+            out.writeLong(indexOffset);
+            out.writeInt(MAGIC);
+            out.flush();
+            deflater.end();
+            finished = true;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // Incomplete blocks are not written until finished, to keep the size of the blocks
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                finish();
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    // Decompresses the blocks sequentially, checking their integrity
+    public static class BlockInputStream extends InputStream {
+
+        private final DataInputStream in;
+        private final Inflater inflater = new Inflater(true);
+        private final CRC32 crc = new CRC32();
+        private byte[] stored;
+        private byte[] block;
+        private int length;
+        private int position;
+        private boolean ended;
+
+        public BlockInputStream(InputStream in) throws IOException {
+            this.in = new DataInputStream(in);
+            if (this.in.readInt() != MAGIC || this.in.readInt() != VERSION) {
+                throw new IOException("Unknown format");
+            }
+            final int blockSize = this.in.readInt();
+            stored = new byte[blockSize];
+            block = new byte[blockSize];
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position == length && !nextBlock()) {
+                return -1;
+            }
+            return block[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            if (count == 0) {
+                return 0;
+            }
+            if (position == length && !nextBlock()) {
+                return -1;
+            }
+            final int copied = Math.min(count, length - position);
+            System.arraycopy(block, position, buffer, offset, copied);
+            position += copied;
+            return copied;
+        }
+
+        @Override
+        public int available() {
+            return length - position;
+        }
+
+        // Decompresses the next block, and returns whether there was one
+        private boolean nextBlock() throws IOException {
+            while (!ended) {
+                final int storedLength = in.readInt();
+                if (storedLength == END_OF_BLOCKS) {
+                    ended = true;
+                    break;
+                }
+                final int blockLength = in.readInt();
+                final int checksum = in.readInt();
+                if (storedLength < 0 || blockLength < 0 || storedLength > blockLength) {
+                    throw new IOException("Corrupted block");
+                }
+                if (stored.length < storedLength) {
+                    stored = new byte[storedLength];
+                }
+                if (block.length < blockLength) {
+                    block = new byte[blockLength];
+                }
+                in.readFully(stored, 0, storedLength);
+                length = decompress(inflater, stored, storedLength, block, blockLength);
+                position = 0;
+                crc.reset();
+                crc.update(block, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    throw new IOException("Corrupted block");
+                }
+                if (length > 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            inflater.end();
+            in.close();
+        }
+    }
+
+    // Decompresses any block of a file on its own, through the index of the blocks
+    public static class RandomAccess {
+
+        private final FileInputStream fis;
+        private final FileChannel channel;
+        private final Inflater inflater = new Inflater(true);
+        private final long[] fileOffsets;
+        private final long[] offsets;
+        private final long length;
+        private byte[] stored = new byte[0];
+
+        public RandomAccess(File file) throws IOException {
+            fis = new FileInputStream(file);
+            channel = fis.getChannel();
+            try {
+                // Locate the index through the trailer
+                final ByteBuffer trailer = read(channel.size() - TRAILER_SIZE, TRAILER_SIZE);
+                final long indexOffset = trailer.getLong();
+                if (trailer.getInt() != MAGIC) {
+                    throw new IOException("Unknown format");
+                }
+                final int blocks = read(indexOffset, 4).getInt();
+                final ByteBuffer index = read(indexOffset + 4, blocks * 16);
+                fileOffsets = new long[blocks + 1];
+                offsets = new long[blocks + 1];
+                for (int i = 0; i < blocks; i++) {
+                    fileOffsets[i] = index.getLong();
+                    offsets[i] = index.getLong();
+                }
+                // The end of the last block
+                fileOffsets[blocks] = indexOffset - 4;
+                offsets[blocks] = blocks == 0 ? 0 :
+                        offsets[blocks - 1] + read(fileOffsets[blocks - 1] + 4, 4).getInt();
+                length = offsets[blocks];
+            } catch (IOException | RuntimeException e) {
+                fis.close();
+                throw e;
+            }
+        }
+
+        public int getBlockCount() {
+            return offsets.length - 1;
+        }
+
+        // Gets the number of uncompressed bytes
+        public long length() {
+            return length;
+        }
+
+        // Gets the position of the first uncompressed byte of the block
+        public long getBlockOffset(int index) {
+            return offsets[index];
+        }
+
+        // Gets the block containing the given position of the uncompressed bytes
+        public int findBlock(long position) {
+            final int found = Arrays.binarySearch(offsets, 0, getBlockCount(), position);
+            return found >= 0 ? found : -found - 2;
+        }
+
+        // Decompresses the given block
+        public byte[] readBlock(int index) throws IOException {
+            final ByteBuffer header = read(fileOffsets[index], 12);
+            final int storedLength = header.getInt();
+            final int blockLength = header.getInt();
+            final int checksum = header.getInt();
+            if (storedLength < 0 || blockLength < 0 || storedLength > blockLength) {
+                throw new IOException("Corrupted block");
+            }
+            if (stored.length < storedLength) {
+                stored = new byte[storedLength];
+            }
+            final ByteBuffer buffer = ByteBuffer.wrap(stored, 0, storedLength);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, fileOffsets[index] + 12 + buffer.position()) == -1) {
+                    throw new EOFException();
+                }
+            }
+            final byte[] block = new byte[blockLength];
+            decompress(inflater, stored, storedLength, block, blockLength);
+            final CRC32 crc = new CRC32();
+            crc.update(block, 0, blockLength);
+            if ((int) crc.getValue() != checksum) {
+                throw new IOException("Corrupted block");
+            }
+            return block;
+        }
+
+        // Reads the given bytes of the file
+        private ByteBuffer read(long offset, int count) throws IOException {
+            if (offset < 0 || count < 0) {
+                throw new IOException("Corrupted index");
+            }
+            final ByteBuffer buffer = ByteBuffer.allocate(count);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) == -1) {
+                    throw new EOFException();
+                }
+            }
+            buffer.flip();
+            return buffer;
+        }
+
+        public void close() throws IOException {
+            inflater.end();
+            fis.close();
+        }
+    }
+
+    // Decompresses the stored bytes of a block (unless stored as they are)
+    // and returns the number of bytes obtained
+    private static int decompress(Inflater inflater, byte[] stored, int storedLength,
+                                  byte[] block, int blockLength) throws IOException {
+        if (storedLength == blockLength) {
+            System.arraycopy(stored, 0, block, 0, blockLength);
+            return blockLength;
+        }
+        inflater.reset();
+        inflater.setInput(stored, 0, storedLength);
+        try {
+            int length = 0;
+            while (length < blockLength && !inflater.finished()) {
+                final int inflated = inflater.inflate(block, length, blockLength - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != blockLength) {
+                throw new IOException("Corrupted block");
+            }
+            return length;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted block", e);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+// Storage target whose contents are provided by a ContentProvider and identified by a URI.
+// Contents are directly accessed through a file descriptor, instead of through the
+// streams provided by the ContentResolver
+public abstract class ContentBackend implements StorageBackend {
+
+    protected final ContentResolver resolver;
+    // Contents currently selected (null if none)
+    private volatile Uri uri;
+
+    protected ContentBackend(ContentResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    public Uri getUri() {
+        return uri;
+    }
+
+    public void setUri(Uri uri) {
+        this.uri = uri;
+    }
+
+    @Override
+    public InputStream openInputStream() throws FileNotFoundException {
+        return new ParcelFileDescriptor.AutoCloseInputStream(openFileDescriptor("r"));
+    }
+
+    @Override
+    public OutputStream openOutputStream() throws FileNotFoundException {
+        // Previous contents are truncated, as not every provider does it in "w" mode
+        return new ParcelFileDescriptor.AutoCloseOutputStream(openFileDescriptor("wt"));
+    }
+
+    // Gets a file descriptor to access the selected contents in the given mode
+    protected ParcelFileDescriptor openFileDescriptor(String mode) throws FileNotFoundException {
+        final Uri current = requireUri();
+        final ParcelFileDescriptor pfd = resolver.openFileDescriptor(current, mode);
+        if (pfd == null) {
+            throw new FileNotFoundException(current.toString());
+        }
+        return pfd;
+    }
+
+    // Gets the URI of the selected contents
+    protected Uri requireUri() throws FileNotFoundException {
+        final Uri current = uri;
+        if (current == null) {
+            throw new FileNotFoundException("No contents selected for " + getName());
+        }
+        return current;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files;
+
+// Fast non-cryptographic 64-bit hash (FNV-1a) of text or bytes, used to detect contents
+// identical to those already stored. Text can be hashed page by page as it is read
+public class ContentHash {
+
+    private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+
+    private long value = OFFSET_BASIS;
+    private long length;
+
+    // Adds the chars to the hash (copied a chunk at a time, so any text is read in bulk)
+    public ContentHash update(CharSequence text) {
+        final int count = text.length();
+        final char[] chunk = new char[Math.min(count, TextStreamLoader.CHUNK_SIZE)];
+        long hash = value;
+        for (int start = 0; start < count; start += chunk.length) {
+            final int end = Math.min(count, start + chunk.length);
+            TextCodec.getChars(text, start, end, chunk, 0);
+            for (int i = 0; i < end - start; i++) {
+                final char c = chunk[i];
+                hash = (hash ^ (c & 0xFF)) * PRIME;
+                hash = (hash ^ (c >>> 8)) * PRIME;
+            }
+        }
+        value = hash;
+        length += count;
+        return this;
+    }
+
+    // Adds the bytes to the hash
+    public ContentHash update(byte[] bytes, int offset, int count) {
+        long hash = value;
+        for (int i = offset; i < offset + count; i++) {
+            hash = (hash ^ (bytes[i] & 0xFF)) * PRIME;
+        }
+        value = hash;
+        length += count;
+        return this;
+    }
+
+    public long getValue() {
+        return value;
+    }
+
+    // Gets the number of chars (or bytes) hashed
+    public long getLength() {
+        return length;
+    }
+
+    public static long of(CharSequence text) {
+        return new ContentHash().update(text).getValue();
+    }
+
+    public static long of(byte[] bytes) {
+        return new ContentHash().update(bytes, 0, bytes.length).getValue();
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.provider.DocumentsContract;
+
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+
+// Storage target consisting of a document selected by the user
+// through the Storage Access Framework (API > 18).
+// When saving again the document last written, only the blocks changed are rewritten
+// through a seekable file descriptor, instead of replacing every byte of the document
+public class DocumentBackend extends ContentBackend {
+
+    // Document last written, checksums of its blocks, and its attributes once written,
+    // which must not change until written again (e.g., by other apps) to rewrite only the
+    // blocks changed
+    private static class Written {
+        final Uri uri;
+        final BlockDelta.Checksums checksums;
+        final Stat stat;
+
+        Written(Uri uri, BlockDelta.Checksums checksums, Stat stat) {
+            this.uri = uri;
+            this.checksums = checksums;
+            this.stat = stat;
+        }
+    }
+
+    // Columns to retrieve to get the attributes of the document
+    private static final String[] PROJECTION = {
+            DocumentsContract.Document.COLUMN_SIZE,
+            DocumentsContract.Document.COLUMN_LAST_MODIFIED};
+
+    private final String name;
+    private final int blockSize;
+    // Last version written (null if unknown)
+    private volatile Written written;
+
+    public DocumentBackend(String name, ContentResolver resolver, int blockSize) {
+        super(resolver);
+        this.name = name;
+        this.blockSize = blockSize;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getPermission(boolean write) {
+        // Access is granted by the user when selecting the document
+        return null;
+    }
+
+    @Override
+    public boolean isExternal() {
+        return true;
+    }
+
+    @Override
+    public boolean isWritable() {
+        return true;
+    }
+
+    // Whether the document selected was last written by this object,
+    // so it can be saved again rewriting only the blocks changed
+    public boolean isWritten() {
+        final Written last = written;
+        return last != null && last.uri.equals(getUri());
+    }
+
+    @Override
+    public OutputStream openOutputStream() throws FileNotFoundException {
+        // The contents written through the stream are unknown
+        written = null;
+        return super.openOutputStream();
+    }
+
+    @Override
+    public void write(CharSequence content, int durability) throws IOException {
+        final Uri current = requireUri();
+        final Written last = written;
+        // Unknown until completely written
+        written = null;
+        BlockDelta.Checksums checksums = null;
+        if (last != null && last.uri.equals(current) && isUnmodified(last)) {
+            checksums = writeDelta(content, durability, last.checksums);
+        }
+        if (checksums == null) {
+            checksums = writeFull(content, durability);
+        }
+        written = new Written(current, checksums, stat());
+    }
+
+    // Whether the document still has the attributes it had once last written
+    private boolean isUnmodified(Written last) throws FileNotFoundException {
+        final Stat stat = stat();
+        return stat.length == last.checksums.length
+                && stat.lastModified != Stat.UNKNOWN
+                && stat.lastModified == last.stat.lastModified;
+    }
+
+    // Rewrites only the blocks that differ from those of the last version, and returns
+    // the checksums of the new one, or null if the provider does not support seeking
+    private BlockDelta.Checksums writeDelta(CharSequence content, int durability,
+                                            BlockDelta.Checksums last) throws IOException {
+        final ParcelFileDescriptor pfd;
+        try {
+            pfd = openFileDescriptor("rw");
+        } catch (FileNotFoundException | IllegalArgumentException
+                | UnsupportedOperationException e) {
+            // Mode not supported by the provider
+            return null;
+        }
+        try {
+            final FileChannel channel = new FileOutputStream(pfd.getFileDescriptor()).getChannel();
+            // Pipes and sockets (e.g., contents streamed by the provider) cannot be sought
+            if (pfd.getStatSize() < 0 || channel.size() != last.length) {
+                return null;
+            }
+            final BlockDelta.Writer writer = BlockDelta.newDeltaWriter(channel, last);
+            TextCodec.encode(content, writer);
+            writer.close();
+            if (durability != AtomicFileWriter.DURABILITY_NONE) {
+                pfd.getFileDescriptor().sync();
+            }
+            return writer.getChecksums();
+        } finally {
+            pfd.close();
+        }
+    }
+
+    // Replaces every byte of the document, and returns the checksums of the new version.
+    // The data is forced to the storage device as when rewriting only the blocks changed
+    private BlockDelta.Checksums writeFull(CharSequence content, int durability)
+            throws IOException {
+        // Previous contents are truncated, as not every provider does it in "w" mode
+        final ParcelFileDescriptor pfd = openFileDescriptor("wt");
+        try {
+            final BlockDelta.Writer writer = BlockDelta.newFullWriter(
+                    new FileOutputStream(pfd.getFileDescriptor()), blockSize);
+            TextCodec.encode(content, writer);
+            writer.close();
+            if (durability != AtomicFileWriter.DURABILITY_NONE) {
+                pfd.getFileDescriptor().sync();
+            }
+            return writer.getChecksums();
+        } finally {
+            pfd.close();
+        }
+    }
+
+    @Override
+    public void delete() throws FileNotFoundException {
+        if (DocumentsContract.deleteDocument(resolver, requireUri())) {
+            written = null;
+            setUri(null);
+        } else {
+            throw new FileNotFoundException(requireUri().toString());
+        }
+    }
+
+    @Override
+    public Stat stat() throws FileNotFoundException {
+        final Cursor cursor = resolver.query(requireUri(), PROJECTION, null, null, null);
+        if (cursor == null) {
+            throw new FileNotFoundException(requireUri().toString());
+        }
+        try {
+            if (!cursor.moveToFirst()) {
+                throw new FileNotFoundException(requireUri().toString());
+            }
+            return new Stat(
+                    cursor.isNull(0) ? Stat.UNKNOWN : cursor.getLong(0),
+                    cursor.isNull(1) ? Stat.UNKNOWN : cursor.getLong(1));
+        } finally {
+            cursor.close();
+        }
+    }
+}
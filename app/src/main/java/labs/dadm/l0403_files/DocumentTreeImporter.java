@@ -0,0 +1,329 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files;
+
+import android.content.ContentResolver;
+import android.content.Intent;
+import android.content.UriPermission;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.os.Process;
+import android.provider.DocumentsContract;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Imports every document in a folder selected by the user through the Storage Access
+// Framework (API > 20) into a folder of the app, keeping the structure of subfolders.
+// Folders are traversed level by level, querying only the columns required for all the
+// children of a folder at once. Documents are read in parallel, a bounded number at a time,
+// through a bulk buffer reused by each thread. Text documents are indexed once imported,
+// so they can be found by searching the stored files
+public class DocumentTreeImporter {
+
+    // Prefix of the keys identifying the imported documents in the search index,
+    // followed by their path relative to the destination folder
+    public static final String KEY_PREFIX = "imported:";
+
+    // Tag of the messages logged
+    private static final String TAG = "DocumentTreeImporter";
+
+    // Columns to retrieve for each child of a folder
+    private static final String[] PROJECTION = {
+            DocumentsContract.Document.COLUMN_DOCUMENT_ID,
+            DocumentsContract.Document.COLUMN_DISPLAY_NAME,
+            DocumentsContract.Document.COLUMN_MIME_TYPE};
+    // Size of the buffer used to read the documents
+    private static final int BUFFER_SIZE = 256 * 1024;
+    // Suffix of the files being imported
+    private static final String TEMP_SUFFIX = ".tmp";
+    // Key measuring the import of each document
+    private static final String METRICS_DOCUMENT = "import.document";
+
+    // Buffer reused by each thread to read the documents
+    private static final ThreadLocal<byte[]> BUFFER = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[BUFFER_SIZE];
+        }
+    };
+
+    // Receives the progress of the import (executed on a background thread)
+    public interface Progress {
+        void onProgress(int imported, int found);
+    }
+
+    // Documents imported and bytes read
+    public static class Result {
+        public final int imported;
+        public final int failed;
+        public final long bytes;
+
+        Result(int imported, int failed, long bytes) {
+            this.imported = imported;
+            this.failed = failed;
+            this.bytes = bytes;
+        }
+    }
+
+    private final ContentResolver resolver;
+    // Number of documents read at once
+    private final int threads;
+    private final IoMetrics metrics;
+    // Full-text index where text documents are added once imported (null if not indexed)
+    private volatile SearchIndex searchIndex;
+
+    public DocumentTreeImporter(ContentResolver resolver, int threads, IoMetrics metrics) {
+        this.resolver = resolver;
+        this.threads = threads;
+        this.metrics = metrics;
+    }
+
+    public void setSearchIndex(SearchIndex searchIndex) {
+        this.searchIndex = searchIndex;
+    }
+
+    // Gets the path of the imported file relative to the destination folder
+    public static String getRelativePath(File destination, File file) {
+        return file.getPath().substring(destination.getPath().length() + 1);
+    }
+
+    // Lists the files imported into the destination folder (executed on a background thread)
+    public static List<String> listImported(File destination) {
+        final ArrayList<String> paths = new ArrayList<>();
+        final ArrayDeque<File> dirs = new ArrayDeque<>();
+        dirs.add(destination);
+        while (!dirs.isEmpty()) {
+            final File[] files = dirs.poll().listFiles();
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    dirs.add(file);
+                } else if (!file.getName().endsWith(TEMP_SUFFIX)) {
+                    paths.add(getRelativePath(destination, file));
+                }
+            }
+        }
+        Collections.sort(paths);
+        return paths;
+    }
+
+    // Keeps the permission to read the folder granted by the user across reboots,
+    // releasing the one of any folder previously selected
+    public void persistPermission(Uri tree, int flags) {
+        for (UriPermission permission : resolver.getPersistedUriPermissions()) {
+            if (isTree(permission.getUri()) && !permission.getUri().equals(tree)) {
+                resolver.releasePersistableUriPermission(
+                        permission.getUri(), Intent.FLAG_GRANT_READ_URI_PERMISSION);
+            }
+        }
+        resolver.takePersistableUriPermission(tree, flags & Intent.FLAG_GRANT_READ_URI_PERMISSION);
+    }
+
+    // Gets the folder whose permission was kept (null if none)
+    public Uri getPersistedTree() {
+        final List<UriPermission> permissions = resolver.getPersistedUriPermissions();
+        for (UriPermission permission : permissions) {
+            if (permission.isReadPermission() && isTree(permission.getUri())) {
+                return permission.getUri();
+            }
+        }
+        return null;
+    }
+
+    // Whether the URI identifies a folder (content://authority/tree/id)
+    private static boolean isTree(Uri uri) {
+        final List<String> segments = uri.getPathSegments();
+        return segments.size() == 2 && "tree".equals(segments.get(0));
+    }
+
+    // Imports the documents of the folder (and its subfolders) into the destination folder,
+    // replacing any file with the same name (executed on a background thread).
+    // Interrupting the thread cancels it
+    public Result importTree(Uri tree, File destination, Progress progress) throws IOException {
+        final AtomicInteger count = new AtomicInteger();
+        final ExecutorService workers = Executors.newFixedThreadPool(threads, runnable ->
+                new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }, "document-import-" + count.incrementAndGet()));
+        final Batch batch = new Batch(workers, progress);
+
+        try {
+            // Folders waiting to be traversed (document identifier and destination)
+            final ArrayDeque<String> ids = new ArrayDeque<>();
+            final ArrayDeque<File> dirs = new ArrayDeque<>();
+            ids.add(DocumentsContract.getTreeDocumentId(tree));
+            dirs.add(destination);
+
+            while (!ids.isEmpty()) {
+                final String id = ids.poll();
+                final File dir = dirs.poll();
+                final Cursor cursor = resolver.query(
+                        DocumentsContract.buildChildDocumentsUriUsingTree(tree, id),
+                        PROJECTION, null, null, null);
+                if (cursor == null) {
+                    throw new FileNotFoundException(tree.toString());
+                }
+                try {
+                    // Documents with the same name in a folder are imported as different files
+                    final HashSet<String> names = new HashSet<>();
+                    while (cursor.moveToNext()) {
+                        if (Thread.interrupted()) {
+                            throw new InterruptedIOException();
+                        }
+                        final String childId = cursor.getString(0);
+                        final File target = new File(dir,
+                                getUniqueName(names, cursor.getString(1), childId));
+                        if (DocumentsContract.Document.MIME_TYPE_DIR.equals(cursor.getString(2))) {
+                            ids.add(childId);
+                            dirs.add(target);
+                        } else {
+                            final Uri uri = DocumentsContract.buildDocumentUriUsingTree(tree, childId);
+                            final boolean text = cursor.getString(2) != null
+                                    && cursor.getString(2).startsWith("text/");
+                            batch.submit(() -> importDocument(uri, target,
+                                    text ? KEY_PREFIX + getRelativePath(destination, target) : null));
+                        }
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+            return batch.finish();
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    // Gets a valid file name for the document, not used by any other in the same folder
+    private static String getUniqueName(HashSet<String> names, String displayName, String id) {
+        String name = displayName == null || displayName.trim().isEmpty() ?
+                Integer.toHexString(id.hashCode()) :
+                displayName.replace('/', '_').replace('\0', '_');
+        if (name.equals(".") || name.equals("..")) {
+            name = "_" + name;
+        }
+        final String unique = name;
+        for (int i = 1; !names.add(name); i++) {
+            name = unique + " (" + i + ")";
+        }
+        return name;
+    }
+
+    // Copies the contents of the document into the target file, and returns the bytes read.
+    // Text documents are indexed with the given key (null if not text)
+    // (executed on a background thread)
+    private long importDocument(Uri uri, File target, String key) throws IOException {
+        final ParcelFileDescriptor pfd = resolver.openFileDescriptor(uri, "r");
+        if (pfd == null) {
+            throw new FileNotFoundException(uri.toString());
+        }
+        final File dir = target.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            pfd.close();
+            throw new IOException("Cannot create " + dir);
+        }
+        final File temp = new File(target.getPath() + TEMP_SUFFIX);
+        long bytes = 0;
+        try {
+            final FileInputStream in = new FileInputStream(pfd.getFileDescriptor());
+            final FileOutputStream out = new FileOutputStream(temp);
+            try {
+                final byte[] buffer = BUFFER.get();
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                    bytes += read;
+                }
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        } finally {
+            pfd.close();
+        }
+        if (!temp.renameTo(target)) {
+            temp.delete();
+            throw new IOException("Cannot replace " + target);
+        }
+        IoMetrics.addBytes(bytes);
+        final SearchIndex index = searchIndex;
+        if (index != null && key != null) {
+            index.requestUpdate(key, consumer -> TextStreamLoader.load(target, consumer));
+        }
+        return bytes;
+    }
+
+    // Documents being imported in parallel. Only a few more than the number of threads
+    // are submitted at once, so the traversal does not get too far ahead of the reads
+    private class Batch {
+        private final ExecutorCompletionService<Long> completion;
+        private final Progress progress;
+        private int submitted;
+        private int imported;
+        private int failed;
+        private long bytes;
+
+        Batch(ExecutorService workers, Progress progress) {
+            this.completion = new ExecutorCompletionService<>(workers);
+            this.progress = progress;
+        }
+
+        void submit(Callable<Long> operation) throws InterruptedIOException {
+            while (submitted - imported - failed >= threads * 2) {
+                collect();
+            }
+            completion.submit(metrics != null ? metrics.measure(METRICS_DOCUMENT, operation) : operation);
+            submitted++;
+        }
+
+        // Waits for every document submitted to be imported
+        Result finish() throws InterruptedIOException {
+            while (imported + failed < submitted) {
+                collect();
+            }
+            return new Result(imported, failed, bytes);
+        }
+
+        // Waits for the next document to be imported
+        private void collect() throws InterruptedIOException {
+            try {
+                bytes += completion.take().get();
+                imported++;
+            } catch (ExecutionException e) {
+                // The rest of the documents are still imported
+                failed++;
+                Log.w(TAG, "Cannot import a document", e.getCause());
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            if (progress != null) {
+                progress.onProgress(imported, submitted);
+            }
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Storage target consisting of a single file in a given folder (internal or external storage).
+// Large files are mapped into memory to be read, and they are replaced atomically.
+// It only depends on java.io (the permissions required are given by the caller),
+// so it can be used on any folder, even outside Android
+public class FileBackend implements StorageBackend {
+
+    private final String name;
+    protected final File file;
+    protected final AtomicFileWriter writer;
+    private final boolean external;
+    // Permissions the user must grant to read and write the file (null if not required)
+    private final String readPermission;
+    private final String writePermission;
+    // Whether the text is written compressed (it is always detected when read)
+    protected volatile boolean compressed;
+    // Full-text index kept up to date with the contents (null if not indexed)
+    protected volatile SearchIndex searchIndex;
+    // Contents last read or written, so writing them again can be skipped
+    // while the file has not been modified by other means (null if unknown)
+    private volatile Fingerprint fingerprint;
+    // Number of modifications made through this object, so copies of the contents
+    // (e.g., prefetched) can be validated without reading them again
+    private final AtomicLong version = new AtomicLong();
+
+    public FileBackend(String name, File dir, String fileName, AtomicFileWriter writer,
+                       boolean external, String readPermission, String writePermission) {
+        this.name = name;
+        this.file = new File(dir, fileName);
+        this.writer = writer;
+        this.external = external;
+        this.readPermission = readPermission;
+        this.writePermission = writePermission;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public void setCompressed(boolean compressed) {
+        this.compressed = compressed;
+    }
+
+    // Whether the text is written compressed
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    public void setSearchIndex(SearchIndex searchIndex) {
+        this.searchIndex = searchIndex;
+        if (searchIndex != null) {
+            // Contents saved before being indexed are read once in background
+            searchIndex.requestUpdateIfMissing(name, this::read);
+        }
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    // Records that the contents have been modified
+    protected void modified() {
+        version.incrementAndGet();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getPermission(boolean write) {
+        return write ? writePermission : readPermission;
+    }
+
+    @Override
+    public boolean isExternal() {
+        return external;
+    }
+
+    @Override
+    public boolean isWritable() {
+        return true;
+    }
+
+    @Override
+    public Stat stat() throws IOException {
+        if (!file.exists()) {
+            throw new FileNotFoundException(file.getPath());
+        }
+        return new Stat(file.length(), file.lastModified());
+    }
+
+    @Override
+    public InputStream openInputStream() throws IOException {
+        return new FileInputStream(file);
+    }
+
+    @Override
+    public OutputStream openOutputStream() throws IOException {
+        // The contents are modified until the stream is closed
+        modified();
+        return new FilterOutputStream(new FileOutputStream(file)) {
+            @Override
+            public void write(byte[] buffer, int offset, int length) throws IOException {
+                out.write(buffer, offset, length);
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    modified();
+                }
+            }
+        };
+    }
+
+    @Override
+    public void delete() throws IOException {
+        fingerprint = null;
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot delete " + file);
+        }
+        modified();
+        if (searchIndex != null) {
+            searchIndex.requestRemove(name);
+        }
+    }
+
+    // Replaces the contents atomically with those of the given file,
+    // which must be located in the same folder
+    public void replaceWith(File source) throws IOException {
+        fingerprint = null;
+        if (!source.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+        modified();
+        // The new contents were not decoded, so they are read again to be indexed
+        if (searchIndex != null) {
+            searchIndex.requestUpdate(name, this::read);
+        }
+    }
+
+    // Opens the file so any part of its contents can be read without reading the rest
+    // (compressed files only decompress the blocks read). Returns null if not possible
+    public LineIndex.Content openContent() throws IOException {
+        if (CompressedBlockFormat.isCompressed(file)) {
+            return new LineIndex.BlockContent(new CompressedBlockFormat.RandomAccess(file));
+        }
+        return new LineIndex.FileContent(file);
+    }
+
+    @Override
+    public long read(TextStreamLoader.PageConsumer consumer) throws IOException {
+        // Large files are mapped into memory, and the contents are hashed as they are read
+        final ContentHash hash = new ContentHash();
+        final long chars = TextStreamLoader.load(file, page -> {
+            hash.update(page);
+            consumer.onPage(page);
+        });
+        IoMetrics.addBytes(file.length());
+        fingerprint = new Fingerprint(hash.getValue(), chars, file);
+        return chars;
+    }
+
+    @Override
+    public void write(CharSequence content, int durability) throws IOException {
+        // Do not write the same contents again (e.g., saving without edits)
+        final long hash = ContentHash.of(content);
+        final Fingerprint last = fingerprint;
+        if (last != null && last.matches(hash, content.length(), file)) {
+            return;
+        }
+        // Replace the file atomically, so it is never left half written
+        writer.write(file, content, durability, compressed);
+        modified();
+        IoMetrics.addBytes(file.length());
+        fingerprint = new Fingerprint(hash, content.length(), file);
+        if (searchIndex != null) {
+            // The text does not change, so the index takes it later on without copying it
+            searchIndex.requestUpdate(name, content);
+        }
+    }
+
+    // Contents of the file at a given time: hash and length of the text,
+    // and length and time of modification of the file
+    private static class Fingerprint {
+        final long hash;
+        final long chars;
+        final long length;
+        final long lastModified;
+
+        Fingerprint(long hash, long chars, File file) {
+            this.hash = hash;
+            this.chars = chars;
+            this.length = file.length();
+            this.lastModified = file.lastModified();
+        }
+
+        // Whether the file still stores the given contents
+        boolean matches(long hash, long chars, File file) {
+            return this.hash == hash && this.chars == chars
+                    && file.length() == length && file.lastModified() == lastModified;
+        }
+    }
+}
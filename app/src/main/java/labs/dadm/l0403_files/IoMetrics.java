@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Collects metrics about the storage operations, grouped by a key identifying the storage
+// target and the operation (e.g., "internal.write"): number of operations and errors,
+// bytes moved, and histograms of the latency and of the time waiting to be executed.
+// Recording only updates atomic counters (no locks), so it can be always enabled
+public class IoMetrics {
+
+    // Entry whose operation is being executed by the current thread (if any),
+    // so bytes can be recorded without passing it around
+    private static final ThreadLocal<Entry> CURRENT = new ThreadLocal<>();
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    // Wraps the operation so it is measured under the given key once executed.
+    // The time from now until its execution starts is recorded as waiting time
+    public <T> Callable<T> measure(String key, Callable<T> operation) {
+        final Entry entry = getEntry(key);
+        final long queued = System.nanoTime();
+        return () -> {
+            final long start = System.nanoTime();
+            entry.wait.record(start - queued);
+            final Entry previous = CURRENT.get();
+            CURRENT.set(entry);
+            boolean failed = true;
+            try {
+                final T result = operation.call();
+                failed = false;
+                return result;
+            } finally {
+                CURRENT.set(previous);
+                entry.latency.record(System.nanoTime() - start);
+                entry.operations.incrementAndGet();
+                if (failed) {
+                    entry.errors.incrementAndGet();
+                }
+            }
+        };
+    }
+
+    // Records the duration (in nanoseconds) of an operation measured elsewhere
+    // (e.g., the time until the user sees the contents) under the given key
+    public void record(String key, long nanos) {
+        final Entry entry = getEntry(key);
+        entry.latency.record(nanos);
+        entry.operations.incrementAndGet();
+    }
+
+    // Adds the bytes to those moved by the operation being measured on the current thread
+    // (ignored if no operation is being measured)
+    public static void addBytes(long bytes) {
+        final Entry entry = CURRENT.get();
+        if (entry != null) {
+            entry.bytes.addAndGet(bytes);
+        }
+    }
+
+    // Wraps the stream so the bytes read are added to the operation being measured
+    public static InputStream counting(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                final int value = super.read();
+                if (value != -1) {
+                    addBytes(1);
+                }
+                return value;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                final int read = super.read(buffer, offset, length);
+                if (read > 0) {
+                    addBytes(read);
+                }
+                return read;
+            }
+        };
+    }
+
+    // Wraps the stream so the bytes written are added to the operation being measured
+    public static OutputStream counting(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int value) throws IOException {
+                out.write(value);
+                addBytes(1);
+            }
+
+            @Override
+            public void write(byte[] buffer, int offset, int length) throws IOException {
+                // Write the whole array at once, instead of byte by byte
+                out.write(buffer, offset, length);
+                addBytes(length);
+            }
+        };
+    }
+
+    // Gets the current value of the metrics, sorted by key
+    public List<Snapshot> snapshot() {
+        final ArrayList<Snapshot> snapshots = new ArrayList<>(entries.size());
+        for (Entry entry : entries.values()) {
+            snapshots.add(new Snapshot(entry));
+        }
+        Collections.sort(snapshots, (a, b) -> a.key.compareTo(b.key));
+        return snapshots;
+    }
+
+    // Prints the current value of the metrics, one line per key
+    public void dump(String prefix, PrintWriter writer) {
+        writer.print(prefix);
+        writer.println("Storage I/O (latency and wait in ms: p50/p95/p99):");
+        for (Snapshot snapshot : snapshot()) {
+            writer.print(prefix);
+            writer.print("  ");
+            writer.println(snapshot);
+        }
+    }
+
+    // Discards every value recorded so far
+    public void reset() {
+        entries.clear();
+    }
+
+    private Entry getEntry(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            final Entry created = new Entry(key);
+            entry = entries.putIfAbsent(key, created);
+            if (entry == null) {
+                entry = created;
+            }
+        }
+        return entry;
+    }
+
+    // Value of the metrics of a key at a given time
+    public static class Snapshot {
+        public final String key;
+        public final long operations;
+        public final long errors;
+        public final long bytes;
+        // Percentiles 50, 95 and 99 (in microseconds)
+        public final long[] latency;
+        public final long[] wait;
+
+        Snapshot(Entry entry) {
+            key = entry.key;
+            operations = entry.operations.get();
+            errors = entry.errors.get();
+            bytes = entry.bytes.get();
+            latency = entry.latency.percentiles(0.50, 0.95, 0.99);
+            wait = entry.wait.percentiles(0.50, 0.95, 0.99);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%s: %d ops, %d errors, %d bytes, latency %.2f/%.2f/%.2f, wait %.2f/%.2f/%.2f",
+                    key, operations, errors, bytes,
+                    latency[0] / 1000.0, latency[1] / 1000.0, latency[2] / 1000.0,
+                    wait[0] / 1000.0, wait[1] / 1000.0, wait[2] / 1000.0);
+        }
+    }
+
+    // Counters of a single key
+    private static class Entry {
+        final String key;
+        final AtomicLong operations = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final AtomicLong bytes = new AtomicLong();
+        final Histogram latency = new Histogram();
+        final Histogram wait = new Histogram();
+
+        Entry(String key) {
+            this.key = key;
+        }
+    }
+
+    // Histogram of durations with logarithmic buckets: each power of two is split
+    // into SUB_BUCKETS buckets, so percentiles have an error lower than 1 / SUB_BUCKETS
+    static class Histogram {
+
+        private static final int SUB_BUCKETS = 8;
+        private static final int SUB_BITS = 3;
+        // Up to 2^40 microseconds (about 12 days)
+        private static final int BUCKETS = (40 - SUB_BITS + 1) * SUB_BUCKETS;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+        // Records the duration (in nanoseconds)
+        void record(long nanos) {
+            counts.incrementAndGet(bucket(Math.max(0, nanos / 1000)));
+        }
+
+        // Gets the upper bound (in microseconds) of the buckets containing the percentiles
+        long[] percentiles(double... fractions) {
+            final long[] snapshot = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = counts.get(i);
+                total += snapshot[i];
+            }
+            final long[] values = new long[fractions.length];
+            if (total == 0) {
+                return values;
+            }
+            for (int f = 0; f < fractions.length; f++) {
+                final long rank = Math.max(1, (long) Math.ceil(fractions[f] * total));
+                long seen = 0;
+                for (int i = 0; i < BUCKETS; i++) {
+                    seen += snapshot[i];
+                    if (seen >= rank) {
+                        values[f] = upperBound(i);
+                        break;
+                    }
+                }
+            }
+            return values;
+        }
+
+        // Gets the bucket for the value (in microseconds)
+        static int bucket(long micros) {
+            if (micros < SUB_BUCKETS) {
+                return (int) micros;
+            }
+            final int msb = 63 - Long.numberOfLeadingZeros(micros);
+            final int sub = (int) (micros >>> (msb - SUB_BITS)) & (SUB_BUCKETS - 1);
+            return Math.min(BUCKETS - 1, (msb - SUB_BITS + 1) * SUB_BUCKETS + sub);
+        }
+
+        // Gets the largest value (in microseconds) included in the bucket
+        static long upperBound(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            final int msb = bucket / SUB_BUCKETS + SUB_BITS - 1;
+            final int sub = bucket % SUB_BUCKETS;
+            final long lower = (long) (SUB_BUCKETS + sub) << (msb - SUB_BITS);
+            return lower + (1L << (msb - SUB_BITS)) - 1;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Storage target consisting of a single file saved as a journal of edits,
+// so the cost of each save depends on the size of the edit.
+// The journal is compacted in background, so saves never pay for rewriting the whole file
+public class JournalBackend extends FileBackend {
+
+    // Tag of the messages logged
+    private static final String TAG = "JournalBackend";
+
+    private final TextJournal journal;
+    // Thread compacting the journal with the lowest priority (created on demand)
+    private ExecutorService compactor;
+    // Whether a compaction is waiting to be executed
+    private final AtomicBoolean compactionRequested = new AtomicBoolean();
+
+    public JournalBackend(String name, File dir, String fileName, AtomicFileWriter writer,
+                          double compactionRatio, long compactionMinBytes) {
+        super(name, dir, fileName, writer, false, null, null);
+        journal = new TextJournal(file, writer, compactionRatio, compactionMinBytes);
+    }
+
+    @Override
+    public void setCompressed(boolean compressed) {
+        super.setCompressed(compressed);
+        // The base file is only written when the journal is compacted
+        journal.setCompressed(compressed);
+    }
+
+    @Override
+    public Stat stat() throws IOException {
+        // The base file may not exist if everything is in the journal
+        // (its length is kept by the journal, so the edits are not replayed)
+        final long length = journal.encodedLength();
+        if (length != -1) {
+            return new Stat(length, Math.max(file.lastModified(), journal.lastModified()));
+        }
+        return super.stat();
+    }
+
+    @Override
+    public InputStream openInputStream() throws IOException {
+        // The edits are applied and the text encoded as it is read
+        final InputStream is = journal.openInputStream();
+        return is != null ? is : super.openInputStream();
+    }
+
+    @Override
+    public LineIndex.Content openContent() throws IOException {
+        // The edits can only be applied to the whole text in memory
+        if (journal.hasEdits()) {
+            return null;
+        }
+        return super.openContent();
+    }
+
+    @Override
+    public OutputStream openOutputStream() throws IOException {
+        // The edits do not apply to the new contents
+        journal.reset();
+        return super.openOutputStream();
+    }
+
+    @Override
+    public void delete() throws IOException {
+        journal.reset();
+        super.delete();
+    }
+
+    @Override
+    public void replaceWith(File source) throws IOException {
+        super.replaceWith(source);
+        // The edits do not apply to the new contents
+        // (if the app crashes before, their header will not match the new base file)
+        journal.reset();
+    }
+
+    @Override
+    public long read(TextStreamLoader.PageConsumer consumer) throws IOException {
+        // Replay the journal of edits (if any), or map large files into memory
+        final long chars = journal.load(consumer);
+        IoMetrics.addBytes(file.length() + journal.length());
+        return chars;
+    }
+
+    @Override
+    public void write(CharSequence content, int durability) throws IOException {
+        // Append only the edits to the journal, and compact it in background when required
+        final long previous = journal.length();
+        final boolean compact = journal.save(content, durability);
+        final long appended = journal.length() - previous;
+        IoMetrics.addBytes(appended);
+        if (compact) {
+            requestCompaction();
+        }
+        // Nothing is appended if the contents have not changed
+        if (appended != 0) {
+            modified();
+            if (searchIndex != null) {
+                // The text does not change, so the index takes it later on without copying it
+                searchIndex.requestUpdate(getName(), content);
+            }
+        }
+    }
+
+    // Compacts the journal on a background thread of the lowest priority,
+    // unless a compaction is already waiting (it will include the edits saved meanwhile)
+    private synchronized void requestCompaction() {
+        if (!compactionRequested.compareAndSet(false, true)) {
+            return;
+        }
+        if (compactor == null) {
+            compactor = Executors.newSingleThreadExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "journal-compaction");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+        }
+        compactor.execute(() -> {
+            compactionRequested.set(false);
+            try {
+                journal.compact();
+            } catch (IOException e) {
+                // The edits are kept in the journal, which will be compacted on the next save
+                Log.w(TAG, "Cannot compact " + getName(), e);
+            }
+        });
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files;
+
+import android.util.Log;
+import android.util.LruCache;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.concurrent.Future;
+
+// Adapter that displays the lines of a large text file in a ListView (read-only).
+// The lines are indexed in a single pass on a background thread, and displayed as soon as
+// they are found. Only the pages of lines close to the visible ones are read and kept
+// in memory, so the memory required does not depend on the size of the file
+public class LineAdapter extends BaseAdapter {
+
+    // Tag of the messages logged
+    private static final String TAG = "LineAdapter";
+
+    // Keys measuring the operations of the viewer
+    private static final String METRICS_INDEX = "viewer.index";
+    private static final String METRICS_PAGE = "viewer.page";
+
+    private final StorageIO storageIO;
+    // Pages of LineIndex.LINES_PER_ENTRY lines already read
+    private final LruCache<Integer, String[]> pages = new LruCache<>(Utils.VIEWER_CACHED_PAGES);
+    // Pages being read
+    private final HashMap<Integer, Future<String[]>> pendingPages = new HashMap<>();
+
+    // Index of the file displayed (null if none)
+    private LineIndex index;
+    // Index being built (if any)
+    private Future<Integer> pendingIndex;
+    // Lines displayed so far
+    private int count;
+
+    // Views are inflated with the context of the ListView, so the adapter (and the file being
+    // indexed) can be kept while the activity is recreated
+    public LineAdapter(StorageIO storageIO) {
+        this.storageIO = storageIO;
+    }
+
+    // Displays the lines of the contents, indexing them on a background thread.
+    // The contents are closed once no longer displayed
+    public void open(LineIndex.Content content) {
+        close();
+        final LineIndex building = new LineIndex(content);
+        index = building;
+
+        pendingIndex = storageIO.submit(METRICS_INDEX, () -> {
+                    // Lines are displayed as they are found
+                    building.build(lines -> storageIO.post(() -> {
+                        if (index == building && lines > count) {
+                            count = lines;
+                            notifyDataSetChanged();
+                        }
+                    }));
+                    return building.getLineCount();
+                },
+                new StorageIO.Callback<Integer>() {
+                    @Override
+                    public void onSuccess(Integer result) {
+                        pendingIndex = null;
+                        count = result;
+                        notifyDataSetChanged();
+                    }
+
+                    @Override
+                    public void onError(Exception e) {
+                        pendingIndex = null;
+                        if (!(e instanceof InterruptedIOException)) {
+                            Log.e(TAG, "Cannot index the lines", e);
+                        }
+                    }
+                });
+    }
+
+    // Stops displaying the contents, cancelling the reads in progress (if any)
+    public void close() {
+        if (pendingIndex != null) {
+            pendingIndex.cancel(true);
+            pendingIndex = null;
+        }
+        // Pages are not interrupted, as that would close the channel they share
+        for (Future<String[]> pending : pendingPages.values()) {
+            pending.cancel(false);
+        }
+        pendingPages.clear();
+        pages.evictAll();
+        if (index != null) {
+            try {
+                index.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Cannot close the contents", e);
+            }
+            index = null;
+        }
+        count = 0;
+        notifyDataSetChanged();
+    }
+
+    // Whether any contents are displayed (even if still being indexed)
+    public boolean isOpen() {
+        return index != null;
+    }
+
+    // Reads the page on a background thread (unless already read or being read)
+    private void loadPage(int page) {
+        final int first = page * LineIndex.LINES_PER_ENTRY;
+        final String[] lines = pages.get(page);
+        if (first >= count || pendingPages.containsKey(page)
+                || (lines != null && lines.length == Math.min(LineIndex.LINES_PER_ENTRY, count - first))) {
+            return;
+        }
+        final LineIndex reading = index;
+        pendingPages.put(page, storageIO.submit(METRICS_PAGE,
+                () -> reading.readLines(first, LineIndex.LINES_PER_ENTRY),
+                new StorageIO.Callback<String[]>() {
+                    @Override
+                    public void onSuccess(String[] result) {
+                        pendingPages.remove(page);
+                        pages.put(page, result);
+                        notifyDataSetChanged();
+                    }
+
+                    @Override
+                    public void onError(Exception e) {
+                        pendingPages.remove(page);
+                        Log.e(TAG, "Cannot read the lines of page " + page, e);
+                    }
+                }));
+    }
+
+    @Override
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public Object getItem(int position) {
+        final String[] lines = pages.get(position / LineIndex.LINES_PER_ENTRY);
+        final int line = position % LineIndex.LINES_PER_ENTRY;
+        return lines != null && line < lines.length ? lines[line] : null;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return position;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        // Inflate the View only if there is no View to be recycled
+        final TextView tvLine = convertView != null ? (TextView) convertView :
+                (TextView) LayoutInflater.from(parent.getContext()).inflate(R.layout.line_element, parent, false);
+
+        // Lines not read yet are displayed empty until their page is read
+        final int page = position / LineIndex.LINES_PER_ENTRY;
+        final String line = (String) getItem(position);
+        tvLine.setText(line);
+        if (line == null) {
+            loadPage(page);
+        }
+        // Read the next page in advance when getting close to its end
+        if (position % LineIndex.LINES_PER_ENTRY
+                >= LineIndex.LINES_PER_ENTRY - Utils.VIEWER_PREFETCH_LINES) {
+            loadPage(page + 1);
+        }
+        return tvLine;
+    }
+}
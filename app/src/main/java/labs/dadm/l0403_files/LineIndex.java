@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+// Sparse index of the lines of a UTF-8 text, built in a single pass over its bytes,
+// so any line can be read by seeking close to it instead of keeping the whole text in memory.
+// Only the position of one out of every LINES_PER_ENTRY lines is kept, and the lines in
+// between are found by scanning from there. The index can be read while it is being built
+public class LineIndex {
+
+    // Number of lines between consecutive positions kept in the index
+    public static final int LINES_PER_ENTRY = 64;
+    // Maximum number of bytes of a line that are decoded (the rest is not displayed)
+    public static final int MAX_LINE_BYTES = 1024;
+    // Number of bytes read from the contents at once
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Number of bytes scanned between progress notifications
+    private static final long PROGRESS_BYTES = 4 * 1024 * 1024;
+
+    // Contents whose bytes can be read at any position (executed on a background thread)
+    public interface Content extends Closeable {
+        // Gets the number of bytes
+        long length();
+
+        // Reads up to count bytes starting at the given position,
+        // and returns the number of bytes read (-1 at the end)
+        int read(long position, byte[] buffer, int offset, int count) throws IOException;
+    }
+
+    // Receives the number of lines indexed so far (executed on a background thread)
+    public interface Progress {
+        void onProgress(int lines);
+    }
+
+    private final Content content;
+    // Position of the first byte of every LINES_PER_ENTRY lines (only the first entries are valid)
+    private volatile long[] entries = new long[1024];
+    // Number of complete lines found so far (written after the entries, so readers see them)
+    private volatile int lineCount;
+
+    public LineIndex(Content content) {
+        this.content = content;
+    }
+
+    // Gets the number of lines indexed so far
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    // Scans the whole contents for line breaks (executed on a background thread).
+    // Interrupting the thread cancels it
+    public void build(Progress progress) throws IOException {
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        final long length = content.length();
+        long[] found = entries;
+        int lines = 0;
+        long position = 0;
+        long notified = 0;
+        byte last = '\n';
+        int read;
+
+        while (position < length
+                && (read = content.read(position, buffer, 0, buffer.length)) != -1) {
+            if (Thread.interrupted()) {
+                throw new InterruptedIOException();
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer[i] == '\n') {
+                    lines++;
+                    // Keep the position where the following line starts
+                    if (lines % LINES_PER_ENTRY == 0) {
+                        final int entry = lines / LINES_PER_ENTRY;
+                        if (entry == found.length) {
+                            found = Arrays.copyOf(found, found.length * 2);
+                            entries = found;
+                        }
+                        found[entry] = position + i + 1;
+                    }
+                }
+            }
+            last = buffer[read - 1];
+            position += read;
+            if (position - notified >= PROGRESS_BYTES) {
+                notified = position;
+                lineCount = lines;
+                progress.onProgress(lines);
+            }
+        }
+        // The last line may not end with a line break
+        lineCount = last == '\n' ? lines : lines + 1;
+        progress.onProgress(lineCount);
+    }
+
+    // Gets the given lines (without line breaks), which must have been already indexed
+    // (executed on a background thread)
+    public String[] readLines(int first, int count) throws IOException {
+        final int available = Math.max(0, Math.min(count, lineCount - first));
+        final String[] lines = new String[available];
+        if (available == 0) {
+            return lines;
+        }
+
+        // Start from the closest line kept in the index
+        final int entry = first / LINES_PER_ENTRY;
+        long position = entries[entry];
+        int skip = first - entry * LINES_PER_ENTRY;
+
+        final byte[] buffer = new byte[TextStreamLoader.CHUNK_SIZE];
+        final byte[] line = new byte[MAX_LINE_BYTES];
+        int lineLength = 0;
+        int index = 0;
+        int read;
+        while (index < available
+                && (read = content.read(position, buffer, 0, buffer.length)) != -1) {
+            for (int i = 0; i < read && index < available; i++) {
+                if (buffer[i] == '\n') {
+                    if (skip > 0) {
+                        skip--;
+                    } else {
+                        lines[index++] = decode(line, lineLength);
+                    }
+                    lineLength = 0;
+                } else if (skip == 0 && lineLength < line.length) {
+                    line[lineLength++] = buffer[i];
+                }
+            }
+            position += read;
+        }
+        // The last line may not end with a line break
+        if (index < available) {
+            lines[index] = decode(line, lineLength);
+        }
+        return lines;
+    }
+
+    // Decodes the bytes of a line, ignoring the carriage return before the line break (if any)
+    private static String decode(byte[] line, int length) {
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        return new String(line, 0, length, TextStreamLoader.UTF_8);
+    }
+
+    // Releases the contents
+    public void close() throws IOException {
+        content.close();
+    }
+
+    // Bytes of a plain file, read at any position through its FileChannel
+    public static class FileContent implements Content {
+
+        private final RandomAccessFile file;
+        private final FileChannel channel;
+        private final long length;
+
+        public FileContent(File file) throws IOException {
+            this.file = new RandomAccessFile(file, "r");
+            this.channel = this.file.getChannel();
+            this.length = channel.size();
+        }
+
+        @Override
+        public long length() {
+            return length;
+        }
+
+        @Override
+        public int read(long position, byte[] buffer, int offset, int count) throws IOException {
+            // Positional reads do not modify the channel, so they can be concurrent
+            return channel.read(ByteBuffer.wrap(buffer, offset, count), position);
+        }
+
+        @Override
+        public void close() throws IOException {
+            file.close();
+        }
+    }
+
+    // Bytes of a compressed file, decompressing only the blocks read
+    // (the last one is kept, as consecutive reads usually fall in the same block)
+    public static class BlockContent implements Content {
+
+        private final CompressedBlockFormat.RandomAccess blocks;
+        private int cachedIndex = -1;
+        private byte[] cachedBlock;
+
+        public BlockContent(CompressedBlockFormat.RandomAccess blocks) {
+            this.blocks = blocks;
+        }
+
+        @Override
+        public long length() {
+            return blocks.length();
+        }
+
+        @Override
+        public synchronized int read(long position, byte[] buffer, int offset, int count)
+                throws IOException {
+            if (position >= blocks.length()) {
+                return -1;
+            }
+            final int index = blocks.findBlock(position);
+            if (index != cachedIndex) {
+                cachedBlock = blocks.readBlock(index);
+                cachedIndex = index;
+            }
+            final int start = (int) (position - blocks.getBlockOffset(index));
+            final int read = Math.min(count, cachedBlock.length - start);
+            System.arraycopy(cachedBlock, start, buffer, offset, read);
+            return read;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            blocks.close();
+        }
+    }
+}
@@ -4,26 +4,25 @@
 
 package labs.dadm.l0403_files;
 
-import android.content.ContentResolver;
-import android.content.ContentUris;
-import android.content.ContentValues;
 import android.content.Intent;
 import android.content.pm.PackageManager;
-import android.database.Cursor;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.database.DataSetObserver;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Environment;
-import android.os.ParcelFileDescriptor;
 import android.provider.MediaStore;
+import android.text.format.Formatter;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
 import android.widget.AdapterView;
 import android.widget.Button;
+import android.widget.CheckBox;
 import android.widget.EditText;
 import android.widget.GridView;
-import android.widget.SimpleAdapter;
+import android.widget.ListView;
 import android.widget.Spinner;
 import android.widget.Toast;
 
@@ -34,52 +33,125 @@ import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
+import androidx.lifecycle.ViewModelProvider;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
-import java.util.Map;
+import java.util.concurrent.Semaphore;
 
 public class MainActivity extends AppCompatActivity {
 
+    // Tag of the messages logged
+    private static final String TAG = "MainActivity";
+
     // Hold references to View
     Spinner spinner;
     EditText etFileContent;
     Button bSave;
+    CheckBox cbAutosave;
     GridView gvImages;
-    SimpleAdapter adapter;
-
-    ArrayList<Map<String, String>> list;
+    ThumbnailAdapter adapter;
+    ListView lvLines;
+    LineAdapter lineAdapter;
 
     ActivityResultLauncher<Intent> launcherReadPublicOther;
     ActivityResultLauncher<Intent> launcherWritePublicOther;
+    ActivityResultLauncher<Intent> launcherTransferPublicOther;
+    ActivityResultLauncher<Intent> launcherImportTree;
     ActivityResultLauncher<String> launcherRequestPermission;
 
-    int operation;
+    // State kept while the activity is recreated (contents loaded and operations in progress)
+    StorageViewModel model;
+
+    // Storage objects of the state, referenced here for convenience
+    IoMetrics metrics;
+    StorageIO storageIO;
+    AtomicFileWriter atomicWriter;
+    StorageBackend[] backends;
+    MediaStoreBackend mediaBackend;
+    DocumentBackend documentBackend;
+    DocumentTreeImporter importer;
+    SearchIndex searchIndex;
+    BitmapPool bitmapPool;
+    ThumbnailCache thumbnailCache;
+    Prefetcher prefetcher;
+    // Saves the EditText contents automatically while they are edited
+    Autosaver autosaver;
+
+    // Notify the user about any error found while reading/writing on a background thread
+    // (delivered to the activity attached when the operation finishes)
+    StorageIO.Callback<Long> readCallback;
+    StorageIO.Callback<Void> writeCallback;
+
+    // Time (System.nanoTime) the activity was created, and the contents of the selected item
+    // were requested (0 if not measured), to measure how long until they are displayed,
+    // whether at startup or after switching to a prefetched item or not
+    long createdAt;
+    long displayRequested;
+    boolean displayAtStartup;
+    boolean displayPrefetched;
+    // Measures the time until the first images are listed
+    final DataSetObserver imagesObserver = new DataSetObserver() {
+        @Override
+        public void onChanged() {
+            if (adapter.getCount() > 0) {
+                recordDisplayed();
+            }
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        createdAt = System.nanoTime();
         setContentView(R.layout.activity_main);
 
+        // Storage targets, contents and operations in progress are kept
+        // while the activity is recreated (e.g., the screen is rotated)
+        model = new ViewModelProvider(this).get(StorageViewModel.class);
+        metrics = model.metrics;
+        storageIO = model.storageIO;
+        atomicWriter = model.atomicWriter;
+        backends = model.backends;
+        mediaBackend = model.mediaBackend;
+        documentBackend = model.documentBackend;
+        importer = model.importer;
+        searchIndex = model.searchIndex;
+        bitmapPool = model.bitmapPool;
+        thumbnailCache = model.thumbnailCache;
+        prefetcher = model.prefetcher;
+        adapter = model.adapter;
+        lineAdapter = model.lineAdapter;
+        readCallback = model.callback(MainActivity::onReadCompleted, MainActivity::onReadFailed);
+        writeCallback = model.callback((activity, result) -> {
+            // Nothing else to do
+        }, MainActivity::showError);
+
         // Get references to the View
         etFileContent = findViewById(R.id.etFileContent);
         bSave = findViewById(R.id.bSave);
+        cbAutosave = findViewById(R.id.cbAutosave);
         spinner = findViewById(R.id.spinner);
         gvImages = findViewById(R.id.gvImages);
+        lvLines = findViewById(R.id.lvLines);
+
+        // Save the EditText contents automatically once the user stops typing (if enabled)
+        autosaver = new Autosaver(etFileContent, storageIO, Utils.AUTOSAVE_DELAY, writeCallback);
+        cbAutosave.setOnCheckedChangeListener(
+                (buttonView, isChecked) -> autosaver.setEnabled(isChecked));
+        if (model.text != null) {
+            // Contents handed over by the previous activity (not edits to be saved)
+            autosaver.runWithoutSaving(() -> etFileContent.setText(model.text));
+            model.text = null;
+        }
 
         // Save file to the selected storage space when the button is clicked
         findViewById(R.id.bSave).setOnClickListener(v -> saveFile());
@@ -102,25 +174,44 @@ public class MainActivity extends AppCompatActivity {
                     }
                 });
 
+        // Continue with copying/moving the file to public external other storage
+        launcherTransferPublicOther = registerForActivityResult(
+                new ActivityResultContracts.StartActivityForResult(),
+                result -> {
+                    if (result.getResultCode() == RESULT_OK && result.getData() != null) {
+                        documentBackend.setUri(result.getData().getData());
+                        transfer(model.transferSource, documentBackend, model.transferMove);
+                    }
+                });
+
+        // Continue with importing the folder selected, keeping the permission to read it
+        launcherImportTree = registerForActivityResult(
+                new ActivityResultContracts.StartActivityForResult(),
+                result -> {
+                    if (result.getResultCode() == RESULT_OK && result.getData() != null) {
+                        final Uri tree = result.getData().getData();
+                        try {
+                            importer.persistPermission(tree, result.getData().getFlags());
+                        } catch (SecurityException e) {
+                            // The provider does not keep the permission, which is still granted
+                            // until the app is stopped, so the folder can be imported anyway
+                            showError(e);
+                        }
+                        importTree(tree);
+                    }
+                });
+
         // This callback is called whenever the user dismisses the dialog used to ask for permissions.
         // Checks whether the user has granted the required permissions and acts accordingly.
         launcherRequestPermission = registerForActivityResult(
                 new ActivityResultContracts.RequestPermission(),
                 permissionGranted -> {
                     if (permissionGranted) {
-                        // Launch the required operation according to the received requestCode
-                        switch (operation) {
-                            case Utils.READ_PRIVATE_EXTERNAL_STORAGE: // Read from application external storage
-                            case Utils.READ_PUBLIC_MEDIA_STORAGE: // Read from public external storage (MEDIA)
-                            case Utils.READ_PUBLIC_OTHER_STORAGE: // Read from public external storage
-                                readFile(operation);
-                                break;
-
-                            case Utils.WRITE_PRIVATE_EXTERNAL_STORAGE: // Write to application external storage
-                            case Utils.WRITE_PUBLIC_MEDIA_STORAGE: // Write to public media storage (Images)
-                            case Utils.WRITE_PUBLIC_OTHER_STORAGE: // Write to public external storage
-                                writeFile(operation);
-                                break;
+                        // Resume the operation waiting for the permission
+                        if (model.pendingWrite) {
+                            writeFile(model.pendingBackend);
+                        } else {
+                            readFile(model.pendingBackend);
                         }
                     } else {
                         Toast.makeText(MainActivity.this, R.string.permission_denied, Toast.LENGTH_SHORT).show();
@@ -133,16 +224,42 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
 
+                if (position == model.position) {
+                    // The activity has been recreated, and the contents of the item
+                    // are already loaded (or being loaded), so they are not read again
+                    reattach(position);
+                    return;
+                }
+                // Measure the time until the contents are displayed
+                displayAtStartup = model.position == AdapterView.INVALID_POSITION;
+                displayRequested = displayAtStartup ? createdAt : System.nanoTime();
+                displayPrefetched = false;
+                model.position = position;
+
+                // Cancel any read still in progress for the previously selected item
+                model.cancelPendingRead();
+
+                // Save any pending edit to the previously selected item,
+                // and save the following ones (if enabled) to the newly selected one
+                final StorageBackend autosaveBackend = getAutosaveBackend(position);
+                autosaver.setBackend(autosaveBackend);
+                cbAutosave.setEnabled(autosaveBackend != null);
+
                 // Clear the list of images for external public storage (Images)
-                list.clear();
-                adapter.notifyDataSetChanged();
+                adapter.clear();
 
                 // Load the default file for the selected element
                 loadFile(position);
 
+                // The options to transfer the contents depend on the selected element
+                invalidateOptionsMenu();
+
                 // Resources cannot be overwritten,
                 // so the Save button is disabled when Resources are selected
-                bSave.setEnabled(position != Utils.RESOURCES);
+                bSave.setEnabled(backends[position].isWritable());
+
+                // Warm the contents of the other items while the user deals with these ones
+                prefetcher.schedule();
             }
 
             @Override
@@ -151,520 +268,871 @@ public class MainActivity extends AppCompatActivity {
             }
         });
 
-        // Create the list that stores the information to be displayed on the GridView
-        list = new ArrayList<>();
-        // Adapter to create the Views that display in the GridView the information contained
-        // in the list (URI to the Image and name of the file)
-        adapter = new SimpleAdapter(MainActivity.this, list, R.layout.grid_element,
-                new String[]{Utils.IMAGE, Utils.NAME}, new int[]{R.id.ivImage, R.id.tvImage});
-        // Set the adapter to the GridView
+        // Adapter to create the Views that display in the GridView the images
+        // in public media storage, querying and decoding them in background
         gvImages.setAdapter(adapter);
+        adapter.registerDataSetObserver(imagesObserver);
+
+        // Adapter to display large files line by line, reading only the visible lines
+        lvLines.setAdapter(lineAdapter);
+        if (lineAdapter.isOpen()) {
+            etFileContent.setVisibility(View.GONE);
+            gvImages.setVisibility(View.GONE);
+            lvLines.setVisibility(View.VISIBLE);
+        }
 
+        // Receive the results of the operations still in progress
+        model.attach(this);
     }
 
-    // Performs the required checks to read the file according to the selected destination
-    private void saveFile() {
-        // Determine the destination file to load according to the selected item
-        switch (spinner.getSelectedItemPosition()) {
-            // Application internal storage
-            case Utils.INTERNAL_STORAGE:
-                writeFile(Utils.WRITE_INTERNAL_STORAGE);
-                break;
-            // Application external storage
-            case Utils.PRIVATE_EXTERNAL_STORAGE:
-                checkPermissionWritePrivateExternalStorage();
-                break;
-            // Public media storage (Images)
-            case Utils.PUBLIC_MEDIA_STORAGE:
-                checkPermissionWritePublicMediaStorage();
-                break;
-            // Public external other storage (Storage Access Framework)
-            case Utils.PUBLIC_OTHER_STORAGE:
-                checkPermissionWritePublicOtherStorage();
-                break;
-        }
-    }
-
-    // Checks the external memory is writable
-    // and that the user has granted permission for writing it (if API < 19)
-    private void checkPermissionWritePrivateExternalStorage() {
-        if (isExternalmemoryWritable()) {
-            if ((Build.VERSION.SDK_INT > 18) ||
-                    checkPermission(android.Manifest.permission.WRITE_EXTERNAL_STORAGE,
-                            Utils.WRITE_PRIVATE_EXTERNAL_STORAGE)) {
-                writeFile(Utils.WRITE_PRIVATE_EXTERNAL_STORAGE);
+    // Restores the state of the Views for the item whose contents are already loaded
+    private void reattach(int position) {
+        final StorageBackend autosaveBackend =
+                lineAdapter.isOpen() ? null : getAutosaveBackend(position);
+        autosaver.setBackend(autosaveBackend);
+        cbAutosave.setEnabled(autosaveBackend != null);
+        bSave.setEnabled(!lineAdapter.isOpen() && backends[position].isWritable());
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        // Do not wait for the user to stop typing, as the app may be killed
+        autosaver.flush();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // Force any write still waiting for its group commit, as the app may be killed
+        storageIO.submit(Utils.METRICS_GROUP_COMMIT, () -> {
+            atomicWriter.flush();
+            return null;
+        }, writeCallback);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // The adapters are kept, so they must not update the Views of this activity anymore
+        gvImages.setAdapter(null);
+        lvLines.setAdapter(null);
+        adapter.unregisterDataSetObserver(imagesObserver);
+        // Operations in progress are only cancelled once the activity finishes for good.
+        // If it is being recreated, the EditText contents are handed over to the new one
+        // (they are not saved in the instance state, as they could be too large)
+        model.detach(isChangingConfigurations() ? etFileContent.getText() : null);
+    }
+
+    // Bitmaps kept to be reused are not required while the UI is not visible
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (level >= TRIM_MEMORY_UI_HIDDEN) {
+            bitmapPool.clear();
+            prefetcher.clear();
+        }
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_main, menu);
+        return true;
+    }
+
+    // Only one copy/move operation can be in progress, and only from sources
+    // that can be transferred (moved only if they can be deleted)
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        final boolean transferring = model.pendingTransfer != null;
+        final int position = spinner.getSelectedItemPosition();
+        final StorageBackend source =
+                position != AdapterView.INVALID_POSITION ? backends[position] : null;
+        menu.findItem(R.id.mCopy).setVisible(!transferring && canTransfer(source));
+        menu.findItem(R.id.mMove).setVisible(!transferring && canTransfer(source)
+                && source.isWritable());
+        menu.findItem(R.id.mCancelTransfer).setVisible(transferring);
+        // Saving public other storage overwrites the document created before,
+        // so the user can create a new one instead
+        menu.findItem(R.id.mSaveAsNew).setVisible(source == documentBackend);
+        // A batch of images can only be exported while public media storage is displayed
+        menu.findItem(R.id.mExportBatch).setVisible(source == mediaBackend);
+        // Folders can only be selected on API > 20, and imported one at a time
+        final boolean importing = model.pendingImport != null;
+        menu.findItem(R.id.mImportFolder).setVisible(Build.VERSION.SDK_INT > 20 && !importing);
+        menu.findItem(R.id.mImportAgain).setVisible(Build.VERSION.SDK_INT > 20 && !importing
+                && importer.getPersistedTree() != null);
+        menu.findItem(R.id.mCancelImport).setVisible(importing);
+        menu.findItem(R.id.mImported).setVisible(Build.VERSION.SDK_INT > 20);
+        menu.findItem(R.id.mCloseImported).setVisible(model.importedPath != null);
+        return super.onPrepareOptionsMenu(menu);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(@NonNull MenuItem item) {
+        final int id = item.getItemId();
+        if (id == R.id.mSaveAsNew) {
+            createDocument(launcherWritePublicOther);
+            return true;
+        } else if (id == R.id.mExportBatch) {
+            confirmExportBatch();
+            return true;
+        } else if (id == R.id.mSearch) {
+            askSearchQuery();
+            return true;
+        } else if (id == R.id.mImportFolder) {
+            chooseTree();
+            return true;
+        } else if (id == R.id.mImportAgain) {
+            // The permission was kept, so the user does not have to select it again
+            final Uri tree = importer.getPersistedTree();
+            if (tree != null) {
+                importTree(tree);
             }
+            return true;
+        } else if (id == R.id.mImported) {
+            listImported();
+            return true;
+        } else if (id == R.id.mCloseImported) {
+            // Display again the contents of the selected storage target
+            loadFile(spinner.getSelectedItemPosition());
+            return true;
+        } else if (id == R.id.mCancelImport) {
+            if (model.pendingImport != null) {
+                model.pendingImport.cancel(true);
+                finishImport();
+                Toast.makeText(this, R.string.import_cancelled, Toast.LENGTH_SHORT).show();
+            }
+            return true;
+        } else if (id == R.id.mCopy || id == R.id.mMove) {
+            chooseTransferTarget(backends[spinner.getSelectedItemPosition()], id == R.id.mMove);
+            return true;
+        } else if (id == R.id.mCancelTransfer) {
+            // The partial file is kept, so the transfer can be resumed
+            if (model.pendingTransfer != null) {
+                model.pendingTransfer.cancel(true);
+                finishTransfer();
+                Toast.makeText(this, R.string.transfer_cancelled, Toast.LENGTH_SHORT).show();
+            }
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    // Asks the user to select a folder whose documents will be imported
+    private void chooseTree() {
+        final Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT_TREE);
+        intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION
+                | Intent.FLAG_GRANT_PERSISTABLE_URI_PERMISSION);
+        if (intent.resolveActivity(getPackageManager()) != null) {
+            launcherImportTree.launch(intent);
         } else {
-            Toast.makeText(
-                    this,
-                    R.string.external_memory_not_mounted,
-                    Toast.LENGTH_SHORT).show();
+            Toast.makeText(this, R.string.no_app_available, Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    // Imports the documents of the folder into application internal storage on a background
+    // thread, displaying the progress in the action bar
+    private void importTree(Uri tree) {
+        final File destination = getImportDir();
+        // Operations keep no reference to this activity, as they may outlive it
+        final StorageViewModel model = this.model;
+        final DocumentTreeImporter importer = this.importer;
+        final DocumentTreeImporter.Progress progress = (imported, found) ->
+                model.post(activity -> activity.showImportProgress(imported, found));
+        model.pendingImport = model.bulkIO.submit(Utils.METRICS_IMPORT,
+                () -> importer.importTree(tree, destination, progress),
+                model.callback(MainActivity::onImportCompleted, (activity, e) -> {
+                    activity.finishImport();
+                    activity.showError(e);
+                }));
+        invalidateOptionsMenu();
+    }
+
+    // Notifies the user about the documents imported
+    private void onImportCompleted(DocumentTreeImporter.Result result) {
+        finishImport();
+        Toast.makeText(
+                this,
+                getString(R.string.import_completed, result.imported,
+                        Formatter.formatShortFileSize(this, result.bytes), result.failed),
+                Toast.LENGTH_SHORT).show();
+    }
+
+    // Displays the progress of the import in the action bar
+    private void showImportProgress(int imported, int found) {
+        if (model.pendingImport == null || getSupportActionBar() == null) {
+            return;
+        }
+        getSupportActionBar().setSubtitle(getString(R.string.import_progress, imported, found));
+    }
+
+    // Removes the progress of the import from the action bar
+    private void finishImport() {
+        model.pendingImport = null;
+        if (getSupportActionBar() != null) {
+            getSupportActionBar().setSubtitle(null);
         }
+        invalidateOptionsMenu();
     }
 
-    // Checks the external memory is writable and
-    // that the user has granted permission for writing it (if API < 29)
-    private void checkPermissionWritePublicMediaStorage() {
-        if (isExternalmemoryWritable()) {
-            if ((Build.VERSION.SDK_INT > 28) ||
-                    checkPermission(android.Manifest.permission.WRITE_EXTERNAL_STORAGE,
-                            Utils.WRITE_PUBLIC_MEDIA_STORAGE)) {
-                writeFile(Utils.WRITE_PUBLIC_MEDIA_STORAGE);
+    // Gets the folder where documents are imported
+    private File getImportDir() {
+        return new File(getFilesDir(), Utils.IMPORT_DIR);
+    }
+
+    // Lists the imported documents on a background thread, so the user can open any of them
+    private void listImported() {
+        final File destination = getImportDir();
+        storageIO.submit(Utils.METRICS_IMPORT_LIST,
+                () -> DocumentTreeImporter.listImported(destination),
+                model.callback(MainActivity::showImported, MainActivity::showError));
+    }
+
+    // Displays the imported documents
+    private void showImported(List<String> paths) {
+        if (paths.isEmpty()) {
+            Toast.makeText(this, R.string.imported_none, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.imported_title)
+                .setItems(paths.toArray(new String[0]),
+                        (dialog, which) -> openImported(paths.get(which)))
+                .show();
+    }
+
+    // Displays the imported document in the read-only viewer, as it does not belong to any
+    // storage target. It is closed by selecting a storage target (or through the menu)
+    private void openImported(String path) {
+        model.cancelPendingRead();
+        closeViewer();
+        final File file = new File(getImportDir(), path);
+        final FileBackend backend = new FileBackend(DocumentTreeImporter.KEY_PREFIX + path,
+                file.getParentFile(), file.getName(), model.atomicWriter, false, null, null);
+        model.pendingRead = storageIO.submit(backend.getName() + StorageBackend.OPEN,
+                backend::openContent,
+                model.callback((activity, content) -> {
+                    activity.model.importedPath = path;
+                    activity.showViewer(content);
+                    activity.invalidateOptionsMenu();
+                }, MainActivity::onReadFailed));
+    }
+
+    // Asks the user for the words to find in the stored files
+    private void askSearchQuery() {
+        final EditText etQuery = new EditText(this);
+        etQuery.setHint(R.string.search_hint);
+        etQuery.setSingleLine();
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.search_title)
+                .setView(etQuery)
+                .setPositiveButton(R.string.search_button,
+                        (dialog, which) -> search(etQuery.getText().toString()))
+                .setNegativeButton(android.R.string.cancel, null)
+                .show();
+    }
+
+    // Finds the stored files containing the words through the index on a background thread,
+    // and lets the user open any of them at the first occurrence
+    private void search(String query) {
+        final SearchIndex searchIndex = this.searchIndex;
+        storageIO.submit(Utils.METRICS_SEARCH,
+                () -> searchIndex.search(query, Utils.SEARCH_MAX_OFFSETS),
+                model.callback((activity, result) -> activity.showSearchResults(query, result),
+                        MainActivity::showError));
+    }
+
+    // Displays the files containing the words found by the search
+    private void showSearchResults(String query, List<SearchIndex.Hit> hits) {
+        final String[] names = getResources().getStringArray(R.array.storage_access_array);
+        final ArrayList<String> items = new ArrayList<>();
+        final ArrayList<SearchIndex.Hit> found = new ArrayList<>();
+        for (SearchIndex.Hit hit : hits) {
+            final int position = getBackendPosition(hit.key);
+            if (hit.offsets.length == 0) {
+                continue;
+            }
+            if (position >= 0) {
+                items.add(getString(R.string.search_result, names[position], hit.count));
+                found.add(hit);
+            } else if (hit.key.startsWith(DocumentTreeImporter.KEY_PREFIX)) {
+                items.add(getString(R.string.search_result, getString(R.string.imported_document,
+                        hit.key.substring(DocumentTreeImporter.KEY_PREFIX.length())), hit.count));
+                found.add(hit);
             }
-        } else {
-            Toast.makeText(
-                    this,
-                    R.string.external_memory_not_mounted,
-                    Toast.LENGTH_SHORT).show();
         }
+        if (found.isEmpty()) {
+            Toast.makeText(this, R.string.search_no_matches, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        new AlertDialog.Builder(this)
+                .setTitle(getString(R.string.search_results_title, query))
+                .setItems(items.toArray(new String[0]), (dialog, which) -> {
+                    final SearchIndex.Hit hit = found.get(which);
+                    final int position = getBackendPosition(hit.key);
+                    if (position < 0) {
+                        // Imported documents are displayed in the viewer, which cannot select
+                        // the occurrence
+                        openImported(hit.key.substring(DocumentTreeImporter.KEY_PREFIX.length()));
+                        return;
+                    }
+                    // Select the first occurrence once the file is loaded
+                    model.pendingSelectionStart = hit.offsets[0];
+                    model.pendingSelectionEnd = hit.offsets[0] + hit.lengths[0];
+                    if (spinner.getSelectedItemPosition() == position) {
+                        loadFile(position);
+                    } else {
+                        spinner.setSelection(position);
+                    }
+                })
+                .show();
     }
 
-    // Checks the external memory is writable and
-    // that the user has granted permission for writing it (if API < 19)
-    private void checkPermissionWritePublicOtherStorage() {
-        if (isExternalmemoryWritable()) {
-            if (Build.VERSION.SDK_INT < 19) {
-                if (checkPermission(android.Manifest.permission.WRITE_EXTERNAL_STORAGE,
-                        Utils.WRITE_PUBLIC_OTHER_STORAGE)) {
-                    writeFile(Utils.WRITE_PUBLIC_OTHER_STORAGE);
-                }
-            } else {
-                // API < 19 then directly write to external storage
-                writeFile(Utils.WRITE_PUBLIC_OTHER_STORAGE);
+    // Gets the position in the Spinner of the storage target with the given name (-1 if none)
+    private int getBackendPosition(String name) {
+        for (int i = 0; i < backends.length; i++) {
+            if (backends[i].getName().equals(name)) {
+                return i;
             }
-        } else {
+        }
+        return -1;
+    }
+
+    // Whether the raw contents of the source can be copied into the text targets
+    // (images are excluded, as they would be written as text)
+    private boolean canTransfer(StorageBackend source) {
+        return source != null && source != mediaBackend;
+    }
+
+    // Asks the user where to copy/move the contents of the source
+    // (only text files can be replaced, so images are excluded)
+    private void chooseTransferTarget(StorageBackend source, boolean move) {
+        if (!canTransfer(source)) {
+            Toast.makeText(this, R.string.transfer_not_allowed, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        // Moving deletes the source once copied, which read-only sources do not support
+        if (move && !source.isWritable()) {
+            Toast.makeText(this, R.string.move_not_allowed, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        final String[] names = getResources().getStringArray(R.array.storage_access_array);
+        final ArrayList<String> items = new ArrayList<>();
+        final ArrayList<StorageBackend> targets = new ArrayList<>();
+        for (int i = 0; i < backends.length; i++) {
+            if (backends[i] != source && backends[i] != mediaBackend && backends[i].isWritable()) {
+                items.add(names[i]);
+                targets.add(backends[i]);
+            }
+        }
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.transfer_target_title)
+                .setItems(items.toArray(new String[0]), (dialog, which) -> {
+                    final StorageBackend target = targets.get(which);
+                    if (target == documentBackend) {
+                        // The user must create the destination document first
+                        model.transferSource = source;
+                        model.transferMove = move;
+                        createDocument(launcherTransferPublicOther);
+                    } else {
+                        transfer(source, target, move);
+                    }
+                })
+                .show();
+    }
+
+    // Copies/moves the raw contents of the source into the target on a background thread,
+    // displaying the progress in the action bar
+    private void transfer(StorageBackend source, StorageBackend target, boolean move) {
+        if (!isAccessible(source, move) || !isAccessible(target, true)) {
+            return;
+        }
+
+        // Operations keep no reference to this activity, as they may outlive it
+        final StorageViewModel model = this.model;
+        final StorageTransfer.Progress progress = (transferred, total) ->
+                model.post(activity -> activity.showTransferProgress(transferred, total));
+        model.pendingTransfer = model.bulkIO.submit(source.getName() + Utils.METRICS_TRANSFER,
+                () -> move ?
+                        StorageTransfer.move(source, target, progress) :
+                        StorageTransfer.copy(source, target, progress),
+                model.callback(
+                        (activity, result) -> activity.onTransferCompleted(source, target, result),
+                        (activity, e) -> {
+                            activity.finishTransfer();
+                            activity.showError(e);
+                        }));
+        invalidateOptionsMenu();
+    }
+
+    // Notifies the user about the bytes transferred
+    private void onTransferCompleted(StorageBackend source, StorageBackend target, long bytes) {
+        finishTransfer();
+        Toast.makeText(
+                this,
+                getString(R.string.transfer_completed, Formatter.formatShortFileSize(this, bytes)),
+                Toast.LENGTH_SHORT).show();
+        // Display the new contents if they are affected
+        final int position = spinner.getSelectedItemPosition();
+        if (backends[position] instanceof FileBackend &&
+                (backends[position] == source || backends[position] == target)) {
+            loadFile(position);
+        }
+    }
+
+    // Displays the progress of the transfer in the action bar
+    private void showTransferProgress(long transferred, long total) {
+        if (model.pendingTransfer == null || getSupportActionBar() == null) {
+            return;
+        }
+        getSupportActionBar().setSubtitle(total > 0 ?
+                getString(R.string.transfer_progress_percent, (int) (transferred * 100 / total)) :
+                getString(R.string.transfer_progress,
+                        Formatter.formatShortFileSize(this, transferred)));
+    }
+
+    // Removes the progress of the transfer from the action bar
+    private void finishTransfer() {
+        model.pendingTransfer = null;
+        if (getSupportActionBar() != null) {
+            getSupportActionBar().setSubtitle(null);
+        }
+        invalidateOptionsMenu();
+    }
+
+    // Checks that the storage target is available and that the user has already granted
+    // the permission required to access it (if any) without asking for it
+    private boolean isAccessible(StorageBackend backend, boolean write) {
+        if (backend.isExternal() &&
+                !(write ? isExternalmemoryWritable() : isExternalMemoryReadable())) {
             Toast.makeText(
                     this,
                     R.string.external_memory_not_mounted,
                     Toast.LENGTH_SHORT).show();
+            return false;
         }
+        final String permission = backend.getPermission(write);
+        if (permission != null && PackageManager.PERMISSION_GRANTED !=
+                ContextCompat.checkSelfPermission(this, permission)) {
+            Toast.makeText(this, R.string.permission_denied, Toast.LENGTH_SHORT).show();
+            return false;
+        }
+        return true;
+    }
+
+    // Prints the metrics of the storage operations
+    // (adb shell dumpsys activity labs.dadm.l0403_files/.MainActivity)
+    @Override
+    public void dump(@NonNull String prefix, FileDescriptor fd,
+                     @NonNull PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        metrics.dump(prefix, writer);
+        writer.print(prefix);
+        writer.print("  Thumbnail cache: ");
+        writer.println(thumbnailCache);
+        writer.print(prefix);
+        writer.print("  Bitmap pool: ");
+        writer.println(bitmapPool);
+        writer.print(prefix);
+        writer.print("  Prefetcher: ");
+        writer.println(prefetcher);
     }
 
-    // Performs the required checks to read the file according to the selected source
+    // Performs the required checks to write the file to the selected destination
+    private void saveFile() {
+        final StorageBackend backend = backends[spinner.getSelectedItemPosition()];
+        if (checkAccess(backend, true)) {
+            writeFile(backend);
+        }
+    }
+
+    // Gets where to automatically save the contents for the selected item (null if not possible).
+    // Only files in application storage can be written without user interaction
+    private StorageBackend getAutosaveBackend(int position) {
+        final StorageBackend backend = backends[position];
+        if (backend instanceof FileBackend && backend.getPermission(true) == null) {
+            return backend;
+        }
+        return null;
+    }
+
+    // Performs the required checks to read the file from the selected source
     private void loadFile(int position) {
-        // Determine the source file to load according to the selected item
-        switch (position) {
-            // Application resources
-            case Utils.RESOURCES:
-                readFile(Utils.READ_RESOURCES);
-                break;
-            // Application internal storage
-            case Utils.INTERNAL_STORAGE:
-                readFile(Utils.READ_INTERNAL_STORAGE);
-                break;
-            // Application external storage
-            case Utils.PRIVATE_EXTERNAL_STORAGE:
-                checkPermissionReadPrivateExternalStorage();
-                break;
-            // Public media storage (Images)
-            case Utils.PUBLIC_MEDIA_STORAGE:
-                checkPermissionReadPublicMediaStorage();
-                break;
-            // Public external storage (Storage Access Framework)
-            case Utils.PUBLIC_OTHER_STORAGE:
-                checkPermissionReadPublicOtherMedia();
-                break;
-        }
-    }
-
-    // Checks the external memory is readable and, if required,
-    // that the user has granted permission for reading it (if API < 19)
-    private void checkPermissionReadPublicOtherMedia() {
-        if (isExternalMemoryReadable()) {
-            if ((Build.VERSION.SDK_INT > 19) ||
-                    checkPermission(android.Manifest.permission.READ_EXTERNAL_STORAGE,
-                            Utils.READ_PUBLIC_OTHER_STORAGE)) {
-                readFile(Utils.READ_PUBLIC_OTHER_STORAGE);
-            }
+        final StorageBackend backend = backends[position];
+        if (checkAccess(backend, false)) {
+            readFile(backend);
         } else {
+            // The time the user takes to grant permission is not measured
+            displayRequested = 0;
+        }
+    }
+
+    // Checks that the storage target is available (external memory mounted) and, if required,
+    // that the user has granted permission for accessing it in read/write mode.
+    // Otherwise, the operation is resumed once the user grants permission
+    private boolean checkAccess(StorageBackend backend, boolean write) {
+        if (backend.isExternal() &&
+                !(write ? isExternalmemoryWritable() : isExternalMemoryReadable())) {
             Toast.makeText(
                     this,
                     R.string.external_memory_not_mounted,
                     Toast.LENGTH_SHORT).show();
+            return false;
         }
+        final String permission = backend.getPermission(write);
+        if (permission == null) {
+            return true;
+        }
+        model.pendingBackend = backend;
+        model.pendingWrite = write;
+        return checkPermission(permission, spinner.getSelectedItemPosition());
     }
 
-    // Checks the external memory is readable and, if required,
-    // that the user has granted permission for reading it (if API < 29)
-    private void checkPermissionReadPublicMediaStorage() {
-        if (isExternalMemoryReadable()) {
-            if ((Build.VERSION.SDK_INT > 28) ||
-                    checkPermission(android.Manifest.permission.READ_EXTERNAL_STORAGE,
-                            Utils.READ_PUBLIC_MEDIA_STORAGE)) {
-                readFile(Utils.READ_PUBLIC_MEDIA_STORAGE);
+    // Reads the source file and displays its contents in the available EditText
+    private void readFile(StorageBackend backend) {
+
+        // Cancel any read still in progress, as its contents are no longer required
+        model.cancelPendingRead();
+        closeViewer();
+
+        if (backend == mediaBackend) {
+            // Public Media storage (Images)
+            readAndDisplayImageFromPublicMediaStorage();
+        } else if (backend == documentBackend) {
+            // The time the user takes to pick the document is not measured
+            displayRequested = 0;
+            // Use the default application from the device to open the document
+            final Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+            // Request that the resulting URI can be opened with openFileDescriptor()
+            intent.addCategory(Intent.CATEGORY_OPENABLE);
+            // Set the MIME type
+            intent.setType("text/plain");
+            // Launch the most suitable application
+            if (intent.resolveActivity(getPackageManager()) != null) {
+                launcherReadPublicOther.launch(intent);
+            } else {
+                Toast.makeText(
+                        MainActivity.this,
+                        R.string.no_app_available,
+                        Toast.LENGTH_SHORT).show();
             }
+        } else if (!readPrefetched(backend)) {
+            readStorage(backend);
+        }
+    }
+
+    // Reads the contents of the source from storage
+    private void readStorage(StorageBackend backend) {
+        if (backend instanceof FileBackend) {
+            // Open the file on a background thread, and check whether it can be edited
+            openFile((FileBackend) backend);
         } else {
-            Toast.makeText(
-                    this,
-                    R.string.external_memory_not_mounted,
-                    Toast.LENGTH_SHORT).show();
+            // Open and read the file on a background thread
+            streamIntoEditor(backend);
         }
     }
 
-    // Checks the external memory is readable
-    // and that the user has granted permission for reading it (if API < 19)
-    private void checkPermissionReadPrivateExternalStorage() {
-        if (isExternalMemoryReadable()) {
-            if ((Build.VERSION.SDK_INT > 18) ||
-                    (checkPermission(android.Manifest.permission.READ_EXTERNAL_STORAGE,
-                            Utils.READ_PRIVATE_EXTERNAL_STORAGE))) {
-                readFile(Utils.READ_PRIVATE_EXTERNAL_STORAGE);
+    // Displays the contents of the source at once if already prefetched, or once prefetched
+    // if being prefetched, and returns whether so
+    private boolean readPrefetched(StorageBackend backend) {
+        final Prefetcher.Source<String> source = model.prefetchedText.get(backend);
+        if (source == null) {
+            return false;
+        }
+        final StorageViewModel model = this.model;
+        final int generation = model.loadGeneration;
+        return prefetcher.get(source, model.callback((activity, text) -> {
+            if (generation == model.loadGeneration) {
+                activity.showPrefetched(text);
             }
-        } else {
-            Toast.makeText(
-                    this,
-                    R.string.external_memory_not_mounted,
-                    Toast.LENGTH_SHORT).show();
+        }, (activity, e) -> {
+            // Read them as usual if they could not be prefetched
+            if (generation == model.loadGeneration) {
+                activity.readStorage(backend);
+            }
+        }));
+    }
+
+    // Displays the contents prefetched in the EditText at once
+    // (loaded contents are not edits to be saved)
+    private void showPrefetched(String text) {
+        displayPrefetched = true;
+        autosaver.runWithoutSaving(() -> etFileContent.setText(text));
+        onReadCompleted(text.length());
+    }
+
+    // Records the time until the contents of the selected item have been displayed
+    private void recordDisplayed() {
+        if (displayRequested == 0) {
+            return;
         }
+        metrics.record(displayAtStartup ? Utils.METRICS_STARTUP : displayPrefetched ?
+                        Utils.METRICS_SWITCH_WARM : Utils.METRICS_SWITCH_COLD,
+                System.nanoTime() - displayRequested);
+        displayRequested = 0;
     }
 
-    // Reads the source file and displays its contents in the available EditText
-    private void readFile(int operation) {
-
-        BufferedReader reader = null;
-        StringBuilder builder = new StringBuilder();
-        String line;
-
-        try {
-            // Open the required Reader according to the selected source file
-            switch (operation) {
-
-                // Application resources
-                case Utils.READ_RESOURCES:
-                    reader = new BufferedReader(new InputStreamReader(
-                            getResources().openRawResource(R.raw.app_resource_file)));
-                    break;
-
-                // Application internal storage
-                case Utils.READ_INTERNAL_STORAGE:
-                    reader = new BufferedReader(
-                            new InputStreamReader(openFileInput("internal_storage_file")));
-                    break;
-
-                // Application external storage
-                case Utils.READ_PRIVATE_EXTERNAL_STORAGE:
-                    reader = new BufferedReader(new FileReader(
-                            new File(getExternalFilesDir(null), "external_storage_file")));
-                    break;
-
-                // Public Media storage (Images)
-                case Utils.READ_PUBLIC_MEDIA_STORAGE:
-                    readAndDisplayImageFromPublicMediaStorage();
-                    break;
-
-                // Public other storage (Storage Access Framework)
-                case Utils.READ_PUBLIC_OTHER_STORAGE:
-                    // Use the Storage Access Framework
-                    if (Build.VERSION.SDK_INT > 18) {
-                        // Use the default application from the device to open the document
-                        final Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
-                        // Request that the resulting URI can be opened with openFileDescriptor()
-                        intent.addCategory(Intent.CATEGORY_OPENABLE);
-                        // Set the MIME type
-                        intent.setType("text/plain");
-                        // Launch the most suitable application
-                        if (intent.resolveActivity(getPackageManager()) != null) {
-                            launcherReadPublicOther.launch(intent);
-                        } else {
-                            Toast.makeText(
-                                    MainActivity.this,
-                                    R.string.no_app_available,
-                                    Toast.LENGTH_SHORT).show();
-                        }
+    // Opens the file on a background thread, and displays its contents in the read-only viewer
+    // if too large for the EditText, or in the EditText otherwise
+    private void openFile(FileBackend backend) {
+        model.pendingRead = storageIO.submit(backend.getName() + StorageBackend.OPEN, () -> {
+                    final LineIndex.Content content = backend.openContent();
+                    // Small files (or those that cannot be opened this way) are edited
+                    if (content != null && content.length() < Utils.VIEWER_THRESHOLD) {
+                        content.close();
+                        return null;
+                    }
+                    return content;
+                },
+                model.callback((activity, result) -> {
+                    if (result == null) {
+                        activity.streamIntoEditor(backend);
                     } else {
-                        reader = new BufferedReader(new FileReader(
-                                new File(Environment.getExternalStorageDirectory() + "/Download",
-                                        "external_public_storage_file")));
+                        activity.showViewer(result);
                     }
+                }, MainActivity::onReadFailed));
+    }
 
-                    break;
-            }
+    // Displays the contents in the read-only viewer instead of the EditText.
+    // They cannot be saved from the EditText, so saving is disabled
+    private void showViewer(LineIndex.Content content) {
+        // Occurrences are located by char, which the viewer does not keep track of
+        model.pendingSelectionStart = -1;
+        autosaver.runWithoutSaving(() -> etFileContent.setText(""));
+        autosaver.setBackend(null);
+        cbAutosave.setEnabled(false);
+        bSave.setEnabled(false);
+        etFileContent.setVisibility(View.GONE);
+        gvImages.setVisibility(View.GONE);
+        lvLines.setVisibility(View.VISIBLE);
+        lineAdapter.open(content);
+        recordDisplayed();
+    }
 
-            if (reader != null) {
-                // Append all lines read from the file into a StringBuilder
-                while ((line = reader.readLine()) != null) {
-                    builder.append(line);
-                }
-            }
-            // Display the file contents in the EditText
-            etFileContent.setText(builder.toString());
-
-        } catch (FileNotFoundException e) {
-            Toast.makeText(this, R.string.file_not_found, Toast.LENGTH_SHORT).show();
-            etFileContent.setText("");
-            e.printStackTrace();
-        } catch (IOException e) {
-            Toast.makeText(this, R.string.io_file_error, Toast.LENGTH_SHORT).show();
-            etFileContent.setText("");
-            e.printStackTrace();
-        } finally {
-            try {
-                // Ensure that the Reader is closed (if opened)
-                if (reader != null) {
-                    reader.close();
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+    // Closes the read-only viewer (if displayed), so contents are edited in the EditText again
+    private void closeViewer() {
+        lineAdapter.close();
+        if (model.importedPath != null) {
+            model.importedPath = null;
+            invalidateOptionsMenu();
         }
+        if (lvLines.getVisibility() != View.VISIBLE) {
+            return;
+        }
+        lvLines.setVisibility(View.GONE);
+        etFileContent.setVisibility(View.VISIBLE);
+        gvImages.setVisibility(View.VISIBLE);
+        final int position = spinner.getSelectedItemPosition();
+        final StorageBackend autosaveBackend = getAutosaveBackend(position);
+        autosaver.setBackend(autosaveBackend);
+        cbAutosave.setEnabled(autosaveBackend != null);
+        bSave.setEnabled(backends[position].isWritable());
     }
 
-    private void readAndDisplayImageFromPublicMediaStorage() {
-        // Columns to retrieve from the table
-        final String[] projection = {MediaStore.Images.Media._ID,
-                MediaStore.Images.Media.DISPLAY_NAME};
-        // When the MIME_TYPE for the entry is
-        final String selection = MediaStore.Images.Media.MIME_TYPE + " = ?";
-        // image/png
-        final String[] arguments = {"image/png"};
-        final String order = MediaStore.Images.Media.DISPLAY_NAME + " ASC";
-
-        try {
-            // Query the ContentProvider to get the desired entries from the table
-            Cursor cursor = getContentResolver().query(
-                    MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
-                    projection,
-                    selection,
-                    arguments,
-                    order
-            );
-
-            // Process the information retrieved (if any)
-            if (cursor != null) {
-                Uri imageUri;
-                HashMap<String, String> map;
-                // Access the next entry
-                while (cursor.moveToNext()) {
-                    // Get the image URI
-                    imageUri = ContentUris.withAppendedId(
-                            MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
-                            cursor.getInt(0));
-                    // Add the Image URI and its file name to the list
-                    map = new HashMap<>();
-                    map.put(Utils.IMAGE, imageUri.toString());
-                    map.put(Utils.NAME, cursor.getString(1));
-                    list.add(map);
+    // Reads the contents of the source on a background thread and appends them
+    // to the EditText page by page, as they become available
+    private void streamIntoEditor(StorageBackend backend) {
+
+        // Clear the previous contents, as the new ones will be appended
+        // (loaded contents are not edits to be saved)
+        autosaver.runWithoutSaving(() -> etFileContent.setText(""));
+        // Pages from any other load will be discarded
+        final StorageViewModel model = this.model;
+        final int generation = model.loadGeneration;
+        // Limits the number of pages read but not displayed yet
+        final Semaphore inFlight = new Semaphore(Utils.PAGES_IN_FLIGHT);
+
+        // Pages are appended to the EditText of the activity attached, so the read continues
+        // while the activity is recreated (waiting for the new one to display them)
+        model.pendingRead = backend.read(storageIO, page -> {
+            // Wait for the main thread to display the previous pages
+            inFlight.acquire();
+            model.post(activity -> {
+                if (generation == model.loadGeneration) {
+                    activity.autosaver.runWithoutSaving(
+                            () -> activity.etFileContent.append(page));
                 }
-                // Close the cursor
-                cursor.close();
-                // Notify the adapter to refresh the GridView with the new information
-                adapter.notifyDataSetChanged();
-            }
+                inFlight.release();
+            });
+        }, readCallback);
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
+    // Contents have been already displayed page by page,
+    // so just select the occurrence found by the search (if any)
+    private void onReadCompleted(long length) {
+        recordDisplayed();
+        if (model.pendingSelectionStart >= 0
+                && model.pendingSelectionEnd <= etFileContent.length()) {
+            etFileContent.requestFocus();
+            etFileContent.setSelection(model.pendingSelectionStart, model.pendingSelectionEnd);
         }
+        model.pendingSelectionStart = -1;
     }
 
-    // Write the EditText contents into the destination file
-    private void writeFile(int operation) {
-
-        BufferedWriter writer = null;
-        final SimpleDateFormat dateFormat = new SimpleDateFormat(Utils.DATE_TIME_FORMAT, Locale.US);
+    // Notifies the user about the error found while reading, and discards the partial contents
+    private void onReadFailed(Exception e) {
+        displayRequested = 0;
+        showError(e);
+        autosaver.runWithoutSaving(() -> etFileContent.setText(""));
+        model.pendingSelectionStart = -1;
+    }
 
-        try {
-            // Open the required Writer according to the selected destination file
-            switch (operation) {
-
-                // Application internal storage
-                case Utils.WRITE_INTERNAL_STORAGE:
-                    writer = new BufferedWriter(
-                            new OutputStreamWriter(
-                                    openFileOutput("internal_storage_file", MODE_PRIVATE)));
-                    break;
-
-                // Application external storage
-                case Utils.WRITE_PRIVATE_EXTERNAL_STORAGE:
-                    writer = new BufferedWriter(new FileWriter(
-                            new File(getExternalFilesDir(null),
-                                    "external_storage_file")));
-                    break;
-
-                // Public media storage (Images)
-                case Utils.WRITE_PUBLIC_MEDIA_STORAGE:
-                    writeImageToPublicMediaStorage();
-                    break;
-
-                // Public external storage (Storage Access Framework)
-                case Utils.WRITE_PUBLIC_OTHER_STORAGE:
-
-                    // Use the Storage Access Framework
-                    if (Build.VERSION.SDK_INT > 18) {
-                        // Use the default application from the device to create the document
-                        Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
-                        // Request that the resulting URI can be opened with openFileDescriptor()
-                        intent.addCategory(Intent.CATEGORY_OPENABLE);
-                        // Set the MIME type
-                        intent.setType("text/plain");
-                        // Set the file name
-                        intent.putExtra(Intent.EXTRA_TITLE,
-                                "public_other_storage" + dateFormat.format(new Date()) + ".txt");
-                        // Launch the most suitable application
-                        if (intent.resolveActivity(getPackageManager()) != null) {
-                            launcherWritePublicOther.launch(intent);
-                        } else {
-                            Toast.makeText(
-                                    MainActivity.this,
-                                    R.string.no_app_available,
-                                    Toast.LENGTH_SHORT).show();
-                        }
-                    } else {
-                        // API < 19 then directly write to external storage
-                        writer = new BufferedWriter(new FileWriter(
-                                new File(Environment.getExternalStorageDirectory() + "/Download",
-                                        "external_public_storage_file")));
-                    }
-                    break;
+    private void readAndDisplayImageFromPublicMediaStorage() {
+        // Display the first page of images at once if already prefetched (or once prefetched).
+        // Otherwise, query it from the ContentProvider, in background,
+        // while the following ones are queried as the GridView displays them
+        final StorageViewModel model = this.model;
+        final int generation = model.loadGeneration;
+        if (!prefetcher.get(adapter.getFirstPage(), model.callback((activity, page) -> {
+            if (generation == model.loadGeneration) {
+                activity.displayPrefetched = true;
+                activity.adapter.reload(page);
             }
-
-            if (writer != null) {
-                // Write to file
-                writer.write(etFileContent.getText().toString());
-                writer.flush();
+        }, (activity, e) -> {
+            if (generation == model.loadGeneration) {
+                activity.adapter.reload();
             }
+        }))) {
+            adapter.reload();
+        }
+    }
 
-        } catch (
-                FileNotFoundException e) {
-            Toast.makeText(this, R.string.file_not_found, Toast.LENGTH_SHORT).show();
-            e.printStackTrace();
-        } catch (
-                IOException e) {
-            Toast.makeText(this, R.string.io_file_error, Toast.LENGTH_SHORT).show();
-            e.printStackTrace();
-        } finally {
-            try {
-                // Ensure that the Writer is closed (if opened)
-                if (writer != null) {
-                    writer.close();
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
+    // Write the EditText contents into the destination file
+    private void writeFile(StorageBackend backend) {
+
+        if (backend == mediaBackend) {
+            // Public media storage (Images)
+            writeImageToPublicMediaStorage();
+        } else if (backend == documentBackend) {
+            if (documentBackend.isWritten()) {
+                // Save again the document created before, rewriting only the blocks changed
+                // (the menu option "Save as new…" creates another document instead)
+                writeText(documentBackend);
+            } else {
+                createDocument(launcherWritePublicOther);
             }
+        } else {
+            writeText(backend);
         }
     }
 
-    private void writeImageToPublicMediaStorage() {
+    // Asks the user to create a new document in public external storage
+    // (Storage Access Framework), and continues with the given launcher
+    private void createDocument(ActivityResultLauncher<Intent> launcher) {
         final SimpleDateFormat dateFormat = new SimpleDateFormat(Utils.DATE_TIME_FORMAT, Locale.US);
-
-        // Set the information to be stored in the ContentProvider
-        final ContentValues values = new ContentValues();
-        // Format the current time as desired
+        // Use the default application from the device to create the document
+        Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+        // Request that the resulting URI can be opened with openFileDescriptor()
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        // Set the MIME type
+        intent.setType("text/plain");
         // Set the file name
-        values.put(MediaStore.Images.Media.DISPLAY_NAME,
-                "andy" + dateFormat.format(new Date()) + ".png");
-        // Set the MIME_TYPE
-        values.put(MediaStore.Images.Media.MIME_TYPE, "image/png");
-        // If API > 28 mark the entry as not inserted yet, so other apps cannot access it
-        if (Build.VERSION.SDK_INT > 28) {
-            values.put(MediaStore.Images.Media.IS_PENDING, 1);
-        }
-
-        // Get access to the content model
-        final ContentResolver resolver = getContentResolver();
-        // Insert the selected image into the table
-        final Uri imageUri = resolver.insert(
-                MediaStore.Images.Media.EXTERNAL_CONTENT_URI, values);
-        // Show a message in case something went wrong
-        if (imageUri == null) {
+        intent.putExtra(Intent.EXTRA_TITLE,
+                "public_other_storage" + dateFormat.format(new Date()) + ".txt");
+        // Launch the most suitable application
+        if (intent.resolveActivity(getPackageManager()) != null) {
+            launcher.launch(intent);
+        } else {
             Toast.makeText(
                     MainActivity.this,
-                    R.string.mediastore_error,
+                    R.string.no_app_available,
                     Toast.LENGTH_SHORT).show();
-        } else {
-            // The returned URI is used to store the image file
-            OutputStream os = null;
-            try {
-                // Get the image to be written from raw resources
-                final Bitmap bitmap = BitmapFactory.decodeStream(
-                        getResources().openRawResource(R.raw.andy));
-                // Open an OutputStream using the return URI
-                os = resolver.openOutputStream(imageUri);
-                // Write the image to the OutputStream
-                bitmap.compress(Bitmap.CompressFormat.PNG, 100, os);
-            } catch (FileNotFoundException fnfe) {
-                Toast.makeText(
-                        MainActivity.this,
-                        R.string.file_not_found,
-                        Toast.LENGTH_SHORT).show();
-            } finally {
-                if (os != null) {
-                    try {
-                        // If opened, close the Outputstream
-                        os.close();
-
-                        // If API > 28 then clear the IS_PENDING flag
-                        // for other apps to access this entry
-                        if (Build.VERSION.SDK_INT > 28) {
-                            values.clear();
-                            values.put(MediaStore.Images.Media.IS_PENDING, 0);
-                            resolver.update(imageUri, values, null, null);
-                        }
+        }
+    }
 
-                        // Update the GridView with the new element
-                        list.clear();
-                        readFile(Utils.READ_PUBLIC_MEDIA_STORAGE);
+    // Writes the EditText contents into the destination file on a background thread
+    private void writeText(StorageBackend backend) {
+        // The EditText can only be accessed from the main thread, so a snapshot of its contents
+        // is taken before starting the background operation. The text is not copied here:
+        // the background operation copies it once, and encodes it chunk by chunk as it is written
+        final TextSnapshot content = TextSnapshot.of(etFileContent);
 
-                    } catch (IOException ioe) {
-                        ioe.printStackTrace();
+        backend.write(storageIO, content, Utils.WRITE_DURABILITY, writeCallback);
+    }
+
+    private void writeImageToPublicMediaStorage() {
+        exportImages(1);
+    }
+
+    // Asks the user to confirm the export of a batch of copies of the image,
+    // as all of them will be added to the public gallery
+    private void confirmExportBatch() {
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.export_batch_title)
+                .setMessage(getString(R.string.export_batch_message, Utils.BATCH_EXPORT_SIZE))
+                .setPositiveButton(R.string.export_batch_button, (dialog, which) -> {
+                    if (isAccessible(mediaBackend, true)) {
+                        exportImages(Utils.BATCH_EXPORT_SIZE);
                     }
-                }
-            }
+                })
+                .setNegativeButton(android.R.string.cancel, null)
+                .show();
+    }
 
+    // Exports the given number of copies of the image to public media storage
+    // on a background thread, and notifies the throughput achieved
+    private void exportImages(int count) {
+        model.exportImages(count,
+                model.callback((activity, result) -> activity.onExported(count, result),
+                        (activity, e) -> {
+                            // Show a message in case something went wrong
+                            Toast.makeText(
+                                    activity,
+                                    R.string.mediastore_error,
+                                    Toast.LENGTH_SHORT).show();
+                            Log.e(TAG, "Cannot export the images", e);
+                        }));
+    }
+
+    // Notifies the user about the images exported
+    private void onExported(int count, MediaExporter.Result result) {
+        if (count > 1) {
+            Toast.makeText(
+                    this,
+                    getString(R.string.export_throughput,
+                            result.exported, result.getImagesPerSecond()),
+                    Toast.LENGTH_SHORT).show();
+        } else if (result.exported == 0) {
+            // The same image was already exported
+            Toast.makeText(
+                    this,
+                    R.string.export_unchanged,
+                    Toast.LENGTH_SHORT).show();
         }
+        // Update the GridView with the new elements only
+        adapter.requestSync(MediaStore.Images.Media.EXTERNAL_CONTENT_URI);
     }
 
     // Create file in public external storage (Storage Access Framework)
     private void writePublicOtherStorage(Intent data) {
-        try {
-            if (data != null) {
-                // Get a file descriptor to write data in the provided URI
-                final ParcelFileDescriptor pfd =
-                        getContentResolver().openFileDescriptor(data.getData(), "w");
-                // FileOutputStream to write to the FileDescriptor
-                final FileOutputStream fos = new FileOutputStream(pfd.getFileDescriptor());
-                // Write the content of the EditText as bytes
-                fos.write(etFileContent.getText().toString().getBytes());
-                // Flush and close the streams and descriptors
-                fos.flush();
-                fos.close();
-                pfd.close();
-            }
-        } catch (FileNotFoundException fnfe) {
-            fnfe.printStackTrace();
-        } catch (IOException ioe) {
-            ioe.printStackTrace();
+        if (data != null) {
+            // Write the contents through a file descriptor of the provided URI
+            documentBackend.setUri(data.getData());
+            writeText(documentBackend);
         }
     }
 
     // Read file from public external storage (Storage Access Framework)
     private void readPublicOtherStorage(Intent data) {
-        try {
-            if (data != null) {
-                StringBuilder builder = new StringBuilder();
-                String line;
-                // Get a file descriptor to read data from the provided URI
-                final ParcelFileDescriptor pfd =
-                        getContentResolver().openFileDescriptor(data.getData(), "r");
-                // BufferedReader to read from the FileDescriptor
-                final BufferedReader reader =
-                        new BufferedReader(new FileReader(pfd.getFileDescriptor()));
-                // Get the content of the file line by line
-                while ((line = reader.readLine()) != null) {
-                    builder.append(line);
-                }
-                // Update the EditText with the contents of the file
-                etFileContent.setText(builder.toString());
-                // Close the reader and descriptor
-                reader.close();
-                pfd.close();
-            }
-        } catch (FileNotFoundException fnfe) {
-            fnfe.printStackTrace();
-        } catch (IOException ioe) {
-            ioe.printStackTrace();
+        if (data != null) {
+            // Read the contents through a file descriptor of the provided URI
+            documentBackend.setUri(data.getData());
+            model.cancelPendingRead();
+            streamIntoEditor(documentBackend);
         }
     }
 
+    // Notifies the user about the error found while accessing the storage
+    private void showError(Exception e) {
+        Toast.makeText(
+                this,
+                e instanceof FileNotFoundException ?
+                        R.string.file_not_found : R.string.io_file_error,
+                Toast.LENGTH_SHORT).show();
+        Log.e(TAG, "Cannot access the storage", e);
+    }
+
     // Checks that the external memory is writable (mounted)
     private boolean isExternalmemoryWritable() {
         return Environment.MEDIA_MOUNTED.equals(Environment.getExternalStorageState());
@@ -679,7 +1147,7 @@ public class MainActivity extends AppCompatActivity {
 
     // Checks that the user has granted permission to access the external memory in read/write mode.
     // Otherwise, it launches a dialog for the user to grant permission
-    private boolean checkPermission(String permission, int operation) {
+    private boolean checkPermission(String permission, int requestCode) {
         if (PackageManager.PERMISSION_GRANTED ==
                 ContextCompat.checkSelfPermission(this, permission)) {
             return true;
@@ -696,7 +1164,7 @@ public class MainActivity extends AppCompatActivity {
                 builder.setPositiveButton(
                         android.R.string.yes,
                         (dialog, which) -> ActivityCompat.requestPermissions(
-                                this, new String[]{permission}, operation));
+                                this, new String[]{permission}, requestCode));
                 // Prevent the dialog from being cancelled
                 builder.setCancelable(false);
                 // Create the dialog
@@ -704,7 +1172,6 @@ public class MainActivity extends AppCompatActivity {
                 // Show the dialog
                 dialog.show();
             } else {
-                this.operation = operation;
                 launcherRequestPermission.launch(permission);
             }
             return false;
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Build;
+import android.os.SystemClock;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Exports images to public media storage in batches: images are encoded in parallel
+// by a pool of threads, while their entries are created in the MediaStore with a single
+// batch operation, and they are all made visible to other apps with a final batch operation
+public class MediaExporter {
+
+    // Tag of the messages logged
+    private static final String TAG = "MediaExporter";
+
+    // Provides the images to be exported (it can be called from any thread)
+    public interface Source {
+        Bitmap getBitmap(int index) throws IOException;
+
+        String getName(int index);
+
+        // Gets the bytes to be stored for the image (PNG by default)
+        default byte[] encode(int index) throws IOException {
+            return MediaExporter.encode(getBitmap(index));
+        }
+    }
+
+    // Outcome of the export operation
+    public static class Result {
+        public final int exported;
+        public final long elapsedMillis;
+        // Entry of the last image exported (null if none)
+        public final Uri last;
+
+        Result(int exported, long elapsedMillis, Uri last) {
+            this.exported = exported;
+            this.elapsedMillis = elapsedMillis;
+            this.last = last;
+        }
+
+        // Gets the throughput achieved
+        public double getImagesPerSecond() {
+            return elapsedMillis == 0 ? exported : exported * 1000.0 / elapsedMillis;
+        }
+    }
+
+    private final ContentResolver resolver;
+
+    public MediaExporter(ContentResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    // Exports the given number of images from the source.
+    // Images are processed in chunks of Utils.EXPORT_CHUNK_SIZE to keep memory usage bounded
+    // (executed on a background thread)
+    public Result export(Source source, int count) throws Exception {
+
+        final long start = SystemClock.elapsedRealtime();
+        final ExecutorService encoders =
+                Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        final ArrayList<Uri> uris = new ArrayList<>(count);
+
+        try {
+            for (int from = 0; from < count; from += Utils.EXPORT_CHUNK_SIZE) {
+                final int to = Math.min(count, from + Utils.EXPORT_CHUNK_SIZE);
+
+                // Encode the images of the chunk in parallel
+                final List<Future<byte[]>> encoded = new ArrayList<>(to - from);
+                for (int i = from; i < to; i++) {
+                    final int index = i;
+                    encoded.add(encoders.submit(() -> source.encode(index)));
+                }
+
+                // Meanwhile, create the entries for the chunk in a single batch operation
+                final List<Uri> chunk = insertPending(source, from, to);
+                uris.addAll(chunk);
+
+                // Stream the encoded bytes into the entries
+                for (int i = 0; i < chunk.size(); i++) {
+                    final OutputStream os = resolver.openOutputStream(chunk.get(i));
+                    if (os == null) {
+                        throw new IOException("Cannot open " + chunk.get(i));
+                    }
+                    try {
+                        final byte[] bytes = encoded.get(i).get();
+                        os.write(bytes);
+                        IoMetrics.addBytes(bytes.length);
+                    } finally {
+                        os.close();
+                    }
+                }
+            }
+
+            // Make all the entries visible to other apps in a single batch operation
+            publish(uris);
+            return new Result(uris.size(), SystemClock.elapsedRealtime() - start,
+                    uris.isEmpty() ? null : uris.get(uris.size() - 1));
+
+        } catch (Exception e) {
+            // Do not leave incomplete entries behind
+            delete(uris);
+            throw e instanceof ExecutionException && e.getCause() instanceof Exception ?
+                    (Exception) e.getCause() : e;
+        } finally {
+            encoders.shutdownNow();
+        }
+    }
+
+    // Compresses the image as PNG (executed on a background thread)
+    static byte[] encode(Bitmap bitmap) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, bytes);
+        return bytes.toByteArray();
+    }
+
+    // Creates the entries for the images in the MediaStore.
+    // If API > 28, entries are marked as not inserted yet, so other apps cannot access them
+    private List<Uri> insertPending(Source source, int from, int to) throws Exception {
+        final ArrayList<ContentProviderOperation> operations = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            final ContentValues values = new ContentValues();
+            // Set the file name
+            values.put(MediaStore.Images.Media.DISPLAY_NAME, source.getName(i));
+            // Set the MIME_TYPE
+            values.put(MediaStore.Images.Media.MIME_TYPE, "image/png");
+            if (Build.VERSION.SDK_INT > 28) {
+                values.put(MediaStore.Images.Media.IS_PENDING, 1);
+            }
+            operations.add(ContentProviderOperation
+                    .newInsert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI)
+                    .withValues(values)
+                    .build());
+        }
+
+        final ContentProviderResult[] results = resolver.applyBatch(MediaStore.AUTHORITY, operations);
+        final ArrayList<Uri> uris = new ArrayList<>(results.length);
+        for (ContentProviderResult result : results) {
+            if (result.uri == null) {
+                delete(uris);
+                throw new IOException("Cannot create a new MediaStore record");
+            }
+            uris.add(result.uri);
+        }
+        return uris;
+    }
+
+    // If API > 28 then clear the IS_PENDING flag for other apps to access the entries
+    private void publish(List<Uri> uris) throws Exception {
+        if (Build.VERSION.SDK_INT > 28 && !uris.isEmpty()) {
+            final ArrayList<ContentProviderOperation> operations = new ArrayList<>(uris.size());
+            for (Uri uri : uris) {
+                operations.add(ContentProviderOperation.newUpdate(uri)
+                        .withValue(MediaStore.Images.Media.IS_PENDING, 0)
+                        .build());
+            }
+            resolver.applyBatch(MediaStore.AUTHORITY, operations);
+        }
+    }
+
+    // Removes the given entries from the MediaStore (errors are ignored)
+    private void delete(List<Uri> uris) {
+        if (uris.isEmpty()) {
+            return;
+        }
+        final ArrayList<ContentProviderOperation> operations = new ArrayList<>(uris.size());
+        for (Uri uri : uris) {
+            operations.add(ContentProviderOperation.newDelete(uri).build());
+        }
+        try {
+            resolver.applyBatch(MediaStore.AUTHORITY, operations);
+        } catch (Exception e) {
+            Log.w(TAG, "Cannot remove the incomplete entries", e);
+        }
+    }
+}
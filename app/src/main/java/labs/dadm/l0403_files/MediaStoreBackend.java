@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files;
+
+import android.Manifest;
+import android.content.ContentResolver;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Build;
+import android.provider.MediaStore;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Map;
+
+// Storage target consisting of the PNG images in public media storage.
+// Images are exported in batches, and the last one exported can be accessed as raw contents.
+// A single image identical to one already exported reuses its entry instead of creating another.
+// Images cannot be read or written as text
+public class MediaStoreBackend extends ContentBackend {
+
+    // Suffix of the key measuring the export of images
+    public static final String EXPORT = ".export";
+
+    // Columns to retrieve to get the attributes of the image
+    private static final String[] PROJECTION = {
+            MediaStore.Images.Media.SIZE,
+            MediaStore.Images.Media.DATE_MODIFIED};
+    // Column to retrieve to check whether an entry still exists
+    private static final String[] PROJECTION_ID = {MediaStore.Images.Media._ID};
+
+    private final String name;
+    private final MediaExporter exporter;
+    // Entry of each image exported, by the hash of its encoded bytes
+    private final SharedPreferences hashes;
+
+    public MediaStoreBackend(String name, ContentResolver resolver, SharedPreferences hashes) {
+        super(resolver);
+        this.name = name;
+        this.exporter = new MediaExporter(resolver);
+        this.hashes = hashes;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getPermission(boolean write) {
+        // Not required for the images of the app if API > 28
+        if (Build.VERSION.SDK_INT > 28) {
+            return null;
+        }
+        return write ?
+                Manifest.permission.WRITE_EXTERNAL_STORAGE : Manifest.permission.READ_EXTERNAL_STORAGE;
+    }
+
+    @Override
+    public boolean isExternal() {
+        return true;
+    }
+
+    @Override
+    public boolean isWritable() {
+        return true;
+    }
+
+    @Override
+    public void delete() throws FileNotFoundException {
+        if (resolver.delete(requireUri(), null, null) > 0) {
+            forget(requireUri());
+            setUri(null);
+        } else {
+            throw new FileNotFoundException(requireUri().toString());
+        }
+    }
+
+    @Override
+    public Stat stat() throws FileNotFoundException {
+        final Cursor cursor = resolver.query(requireUri(), PROJECTION, null, null, null);
+        if (cursor == null) {
+            throw new FileNotFoundException(requireUri().toString());
+        }
+        try {
+            if (!cursor.moveToFirst()) {
+                throw new FileNotFoundException(requireUri().toString());
+            }
+            // The time of modification is given in seconds
+            return new Stat(
+                    cursor.isNull(0) ? Stat.UNKNOWN : cursor.getLong(0),
+                    cursor.isNull(1) ? Stat.UNKNOWN : cursor.getLong(1) * 1000);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public long read(TextStreamLoader.PageConsumer consumer) throws IOException {
+        throw new IOException("Images cannot be read as text");
+    }
+
+    @Override
+    public void write(CharSequence content, int durability) throws IOException {
+        throw new IOException("Images cannot be written as text");
+    }
+
+    // Exports the given number of images from the source in batches,
+    // and selects the last one exported (executed on a background thread)
+    public MediaExporter.Result export(MediaExporter.Source source, int count) throws Exception {
+        if (count == 1) {
+            return exportUnique(source);
+        }
+        final MediaExporter.Result result = exporter.export(source, count);
+        if (result.last != null) {
+            setUri(result.last);
+        }
+        return result;
+    }
+
+    // Exports a single image unless the same bytes were already exported and their entry
+    // still exists, in which case that entry is selected and no image is exported
+    // (executed on a background thread)
+    private MediaExporter.Result exportUnique(MediaExporter.Source source) throws Exception {
+        // The image is encoded only once, both to compute its hash and to be exported
+        final byte[] bytes = source.encode(0);
+        final String key = Long.toHexString(ContentHash.of(bytes)) + "_" + bytes.length;
+
+        final String existing = hashes.getString(key, null);
+        if (existing != null) {
+            final Uri uri = Uri.parse(existing);
+            if (exists(uri)) {
+                setUri(uri);
+                return new MediaExporter.Result(0, 0, uri);
+            }
+        }
+
+        final MediaExporter.Result result = exporter.export(new MediaExporter.Source() {
+            @Override
+            public Bitmap getBitmap(int index) throws IOException {
+                return source.getBitmap(index);
+            }
+
+            @Override
+            public String getName(int index) {
+                return source.getName(index);
+            }
+
+            @Override
+            public byte[] encode(int index) {
+                return bytes;
+            }
+        }, 1);
+        if (result.last != null) {
+            hashes.edit().putString(key, result.last.toString()).apply();
+            setUri(result.last);
+        }
+        return result;
+    }
+
+    // Whether the entry is still in the MediaStore (it may have been deleted by other apps)
+    private boolean exists(Uri uri) {
+        final Cursor cursor;
+        try {
+            cursor = resolver.query(uri, PROJECTION_ID, null, null, null);
+        } catch (SecurityException e) {
+            // Entries of a previous installation are no longer accessible
+            return false;
+        }
+        if (cursor == null) {
+            return false;
+        }
+        try {
+            return cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Removes the hash of the entry, so it is not reused
+    private void forget(Uri uri) {
+        final String value = uri.toString();
+        for (Map.Entry<String, ?> entry : hashes.getAll().entrySet()) {
+            if (value.equals(entry.getValue())) {
+                hashes.edit().remove(entry.getKey()).apply();
+            }
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.os.Build;
+import android.os.Bundle;
+import android.provider.MediaStore;
+
+import java.util.Arrays;
+
+// Queries the PNG images in public media storage one page at a time.
+// Pages are sorted by file name and located through the last row of the previous page
+// (keyset pagination), so the cost of each query does not depend on its position.
+// It also queries the rows changed since a given version of the table, so the GridView
+// can be updated incrementally
+public class MediaStorePager {
+
+    // Column identifying the version of a row: its generation (API > 29)
+    // or, if not available, the time of its last modification (in seconds)
+    private static final String VERSION = Build.VERSION.SDK_INT > 29 ?
+            MediaStore.MediaColumns.GENERATION_MODIFIED : MediaStore.Images.Media.DATE_MODIFIED;
+    // Maximum number of identifiers included in a single query
+    private static final int IDS_PER_QUERY = 500;
+
+    // Columns to retrieve from the table
+    private static final String[] PROJECTION = {
+            MediaStore.Images.Media._ID,
+            MediaStore.Images.Media.DISPLAY_NAME,
+            MediaStore.Images.Media.DATE_MODIFIED,
+            VERSION};
+    // Rows are sorted by file name, considering missing names as empty,
+    // so every row can be located after the previous one
+    private static final String SORT_NAME = "COALESCE("
+            + MediaStore.Images.Media.DISPLAY_NAME + ", '')";
+    // When the MIME_TYPE for the entry is image/png
+    private static final String SELECTION = MediaStore.Images.Media.MIME_TYPE + " = ?";
+    // and is located after the last row of the previous page
+    private static final String SELECTION_AFTER = SELECTION + " AND ("
+            + SORT_NAME + " > ? OR ("
+            + SORT_NAME + " = ? AND "
+            + MediaStore.Images.Media._ID + " > ?))";
+    // The identifier breaks ties between files with the same name
+    private static final String ORDER = SORT_NAME + " ASC, "
+            + MediaStore.Images.Media._ID + " ASC";
+
+    // Rows retrieved by a single query
+    public static class Page {
+        public final long[] ids;
+        public final String[] names;
+        public final long[] dates;
+        public int count;
+        // Latest version of the table when the page was queried
+        public long version;
+
+        Page(int capacity) {
+            ids = new long[capacity];
+            names = new String[capacity];
+            dates = new long[capacity];
+        }
+    }
+
+    // Rows modified or deleted since a given version of the table
+    public static class Changes {
+        public Page modified;
+        public long[] deleted;
+        public int deletedCount;
+    }
+
+    private final ContentResolver resolver;
+
+    public MediaStorePager(ContentResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    // Gets up to limit rows, from the first one or located after the given row
+    // (whose name may be null) (executed on a background thread)
+    public Page queryPage(boolean first, String afterName, long afterId, int limit) {
+
+        final String selection;
+        final String[] arguments;
+        if (first) {
+            selection = SELECTION;
+            arguments = new String[]{"image/png"};
+        } else {
+            final String name = afterName != null ? afterName : "";
+            selection = SELECTION_AFTER;
+            arguments = new String[]{"image/png", name, name, String.valueOf(afterId)};
+        }
+
+        // Query the ContentProvider to get the desired entries from the table
+        final Page page = query(selection, arguments, ORDER, limit);
+        // The version of the table is required to later query the changes
+        if (first) {
+            page.version = queryLatestVersion();
+        }
+        return page;
+    }
+
+    // Gets the rows modified, and the rows deleted, since the given version of the table.
+    // Deleted rows are searched among the given identifiers, which are also considered
+    // as modified if still present when onlyIds is true (executed on a background thread)
+    public Changes queryChanges(long version, long[] ids, int count, boolean onlyIds) {
+        final Changes changes = new Changes();
+
+        // Check which of the identifiers are still present
+        final Page present = queryIds(ids, count);
+        final long[] presentIds = Arrays.copyOf(present.ids, present.count);
+        Arrays.sort(presentIds);
+        changes.deleted = new long[count];
+        for (int i = 0; i < count; i++) {
+            if (Arrays.binarySearch(presentIds, ids[i]) < 0) {
+                changes.deleted[changes.deletedCount++] = ids[i];
+            }
+        }
+
+        if (onlyIds) {
+            changes.modified = present;
+        } else {
+            // The time of modification has a resolution of seconds,
+            // so rows modified within the same second must be included too
+            changes.modified = query(
+                    SELECTION + " AND " + VERSION + (Build.VERSION.SDK_INT > 29 ? " > ?" : " >= ?"),
+                    new String[]{"image/png", String.valueOf(version)},
+                    null, Integer.MAX_VALUE);
+        }
+        changes.modified.version = Math.max(version, changes.modified.version);
+        return changes;
+    }
+
+    // Gets the rows with the given identifiers, querying them in batches
+    private Page queryIds(long[] ids, int count) {
+        final Page page = new Page(count);
+        for (int from = 0; from < count; from += IDS_PER_QUERY) {
+            final int to = Math.min(count, from + IDS_PER_QUERY);
+            final StringBuilder selection = new StringBuilder(SELECTION)
+                    .append(" AND ").append(MediaStore.Images.Media._ID).append(" IN (");
+            final String[] arguments = new String[to - from + 1];
+            arguments[0] = "image/png";
+            for (int i = from; i < to; i++) {
+                selection.append(i == from ? "?" : ",?");
+                arguments[i - from + 1] = String.valueOf(ids[i]);
+            }
+            selection.append(')');
+
+            final Page batch = query(selection.toString(), arguments, null, to - from);
+            System.arraycopy(batch.ids, 0, page.ids, page.count, batch.count);
+            System.arraycopy(batch.names, 0, page.names, page.count, batch.count);
+            System.arraycopy(batch.dates, 0, page.dates, page.count, batch.count);
+            page.count += batch.count;
+            page.version = Math.max(page.version, batch.version);
+        }
+        return page;
+    }
+
+    // Gets the latest version of any row in the table
+    private long queryLatestVersion() {
+        final Page page = query(SELECTION, new String[]{"image/png"}, VERSION + " DESC", 1);
+        return page.version;
+    }
+
+    // Gets up to limit rows matching the selection, in the given order
+    private Page query(String selection, String[] arguments, String order, int limit) {
+        final boolean limited = limit != Integer.MAX_VALUE;
+        final Cursor cursor;
+        if (Build.VERSION.SDK_INT > 29) {
+            // API > 29 only accepts the limit as a query argument
+            final Bundle queryArgs = new Bundle();
+            queryArgs.putString(ContentResolver.QUERY_ARG_SQL_SELECTION, selection);
+            queryArgs.putStringArray(ContentResolver.QUERY_ARG_SQL_SELECTION_ARGS, arguments);
+            if (order != null) {
+                queryArgs.putString(ContentResolver.QUERY_ARG_SQL_SORT_ORDER, order);
+            }
+            if (limited) {
+                queryArgs.putInt(ContentResolver.QUERY_ARG_LIMIT, limit);
+            }
+            cursor = resolver.query(MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
+                    PROJECTION, queryArgs, null);
+        } else {
+            cursor = resolver.query(MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
+                    PROJECTION, selection, arguments,
+                    limited ? (order == null ? MediaStore.Images.Media._ID : order)
+                            + " LIMIT " + limit : order);
+        }
+
+        // Copy the rows into the page (if any)
+        final Page page;
+        if (cursor != null) {
+            page = new Page(limited ? limit : cursor.getCount());
+            try {
+                while (page.count < page.ids.length && cursor.moveToNext()) {
+                    page.ids[page.count] = cursor.getLong(0);
+                    page.names[page.count] = cursor.getString(1);
+                    page.dates[page.count] = cursor.getLong(2);
+                    page.version = Math.max(page.version, cursor.getLong(3));
+                    page.count++;
+                }
+            } finally {
+                // Close the cursor
+                cursor.close();
+            }
+        } else {
+            page = new Page(0);
+        }
+        return page;
+    }
+}
@@ -0,0 +1,415 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files;
+
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.Future;
+
+// Warms the contents of the storage targets likely to be selected next, so selecting them
+// displays their contents at once instead of reading them. Sources are prefetched one at a time,
+// in order of preference, on a thread of the lowest priority, and only while the main thread
+// is idle and no other storage operation is in progress: a prefetch yields as soon as any other
+// operation arrives, and is resumed on the next idle time. Each prefetch is abandoned if it takes
+// longer than the time budget (retried on later idle times, up to MAX_TIME_OVERRUNS times),
+// or if the contents kept in memory would exceed the limit (not retried until modified).
+// Only contents that can be validated without reading them again are prefetched.
+// Except for the contents being read, it must be used from the main thread
+public class Prefetcher implements MessageQueue.IdleHandler {
+
+    // Tag of the messages logged
+    private static final String TAG = "Prefetcher";
+
+    // Suffix of the keys measuring the prefetch of each source
+    public static final String PREFETCH = ".prefetch";
+    // Times a source can exceed the time budget before it is not prefetched again until modified
+    private static final int MAX_TIME_OVERRUNS = 3;
+
+    // Contents that can be prefetched
+    public interface Source<T> {
+        // Name identifying the source
+        String getName();
+
+        // Version of the contents, which changes whenever they are modified,
+        // so contents prefetched are discarded once outdated
+        long getVersion();
+
+        // Reads the contents (executed on a background thread), checking the budget
+        // as they are read so the prefetch can be abandoned
+        T read(Budget budget) throws Exception;
+
+        // Gets the number of chars (or equivalent) kept in memory by the contents
+        long sizeOf(T contents);
+    }
+
+    // Thrown when the prefetch would exceed the time budget or the memory limit
+    public static class BudgetExceededException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        // Whether only the time budget was exceeded, so the prefetch may succeed later on
+        // (e.g., once the storage is less busy)
+        final boolean timeout;
+
+        BudgetExceededException(String message, boolean timeout) {
+            super(message);
+            this.timeout = timeout;
+        }
+    }
+
+    // Limits of a single prefetch, checked as the contents are read
+    public class Budget {
+        private final long deadline;
+        private final long maxSize;
+        // Whether the contents are already required (their source has been selected),
+        // so the prefetch no longer yields to other operations nor has a deadline
+        private volatile boolean required;
+
+        Budget(long maxSize) {
+            this.deadline = System.nanoTime() + timeBudget;
+            this.maxSize = maxSize;
+        }
+
+        // Checks that the prefetch can continue once the contents read so far
+        // keep the given size in memory
+        public void check(long size) throws IOException {
+            if (size > maxSize) {
+                throw new BudgetExceededException("Prefetch exceeds " + maxSize + " chars", false);
+            }
+            if (required) {
+                return;
+            }
+            if (Thread.currentThread().isInterrupted() || isBusy()) {
+                throw new InterruptedIOException("Prefetch yields to other operations");
+            }
+            if (System.nanoTime() > deadline) {
+                throw new BudgetExceededException("Prefetch exceeds its time budget", true);
+            }
+        }
+    }
+
+    // Text contents of a storage target that can be validated without reading them again:
+    // application resources (never modified), and files only modified through their FileBackend
+    public static class TextSource implements Source<String> {
+
+        private final StorageBackend backend;
+
+        public TextSource(StorageBackend backend) {
+            this.backend = backend;
+        }
+
+        @Override
+        public String getName() {
+            return backend.getName();
+        }
+
+        @Override
+        public long getVersion() {
+            return backend instanceof FileBackend ? ((FileBackend) backend).getVersion() : 0;
+        }
+
+        @Override
+        public String read(Budget budget) throws IOException {
+            budget.check(0);
+            final StringBuilder text = new StringBuilder();
+            // Pages can only stop the read by interrupting it, so the reason is kept apart
+            final IOException[] stopped = new IOException[1];
+            try {
+                backend.read(page -> {
+                    try {
+                        budget.check(text.length() + page.length());
+                    } catch (IOException e) {
+                        stopped[0] = e;
+                        throw new InterruptedException();
+                    }
+                    text.append(page);
+                });
+            } catch (InterruptedIOException e) {
+                throw stopped[0] != null ? stopped[0] : e;
+            }
+            return text.toString();
+        }
+
+        @Override
+        public long sizeOf(String contents) {
+            return contents.length();
+        }
+    }
+
+    // Times the prefetch of a version of a source has exceeded the time budget
+    private static class Overruns {
+        final long version;
+        final int count;
+
+        Overruns(long version, int count) {
+            this.version = version;
+            this.count = count;
+        }
+    }
+
+    // Contents prefetched and their version
+    private static class Warm {
+        final Object contents;
+        final long version;
+        final long size;
+
+        Warm(Object contents, long version, long size) {
+            this.contents = contents;
+            this.version = version;
+            this.size = size;
+        }
+    }
+
+    // Executes the prefetches with the lowest priority
+    private final StorageIO io;
+    // Executors of the other storage operations, which prefetches yield to
+    private final StorageIO[] others;
+    private final long timeBudget;
+    private final long maxSize;
+
+    // Sources to prefetch, in order of preference
+    private final ArrayList<Source<?>> sources = new ArrayList<>();
+    // Contents already prefetched, and size kept in memory
+    private final HashMap<Source<?>, Warm> warm = new HashMap<>();
+    private long size;
+    // Version of the sources not prefetched for exceeding the budget (or failing)
+    private final HashMap<Source<?>, Long> exceeded = new HashMap<>();
+    // Time budget overruns of the sources, which are retried a few times
+    private final HashMap<Source<?>, Overruns> overruns = new HashMap<>();
+
+    // Prefetch in progress (if any)
+    private Source<?> prefetching;
+    private long prefetchingVersion;
+    private Future<?> pending;
+    private Budget budget;
+    // Callback waiting for the prefetch in progress (its source has been selected)
+    private StorageIO.Callback<Object> waiting;
+    // Whether waiting for the main thread to be idle
+    private boolean scheduled;
+
+    // Counters to evaluate the effectiveness of the prefetches
+    private long hits;
+    private long joined;
+    private long misses;
+    private long yielded;
+
+    public Prefetcher(StorageIO io, StorageIO[] others, long timeBudgetMillis, long maxSize) {
+        this.io = io;
+        this.others = others;
+        this.timeBudget = timeBudgetMillis * 1000000L;
+        this.maxSize = maxSize;
+    }
+
+    // Adds a source to prefetch, after those already added
+    public void add(Source<?> source) {
+        sources.add(source);
+    }
+
+    // Starts prefetching the first source right now, without waiting for the main thread to be
+    // idle (e.g., the contents displayed at startup, read while the Views are created)
+    public void start() {
+        if (pending == null) {
+            next();
+        }
+    }
+
+    // Prefetches the sources not prefetched yet (or outdated) once the main thread is idle
+    public void schedule() {
+        if (!scheduled) {
+            Looper.myQueue().addIdleHandler(this);
+            scheduled = true;
+        }
+    }
+
+    @Override
+    public boolean queueIdle() {
+        // Wait for the next idle time while other operations are in progress
+        if (pending == null && isBusy()) {
+            return true;
+        }
+        // The next source is scheduled once the prefetch in progress (if any) finishes
+        if (pending == null) {
+            next();
+        }
+        scheduled = false;
+        return false;
+    }
+
+    // Whether any other storage operation is in progress
+    private boolean isBusy() {
+        for (StorageIO other : others) {
+            if (other.isBusy()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Starts prefetching the first source not prefetched yet, and returns whether there is any
+    private boolean next() {
+        for (Source<?> source : sources) {
+            final long version = source.getVersion();
+            final Warm contents = warm.get(source);
+            final Long failed = exceeded.get(source);
+            if ((contents == null || contents.version != version)
+                    && (failed == null || failed != version)) {
+                prefetch(source, version);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Reads the contents of the source on a background thread, within the budget
+    // left once discarding its previous contents (if any)
+    private <T> void prefetch(Source<T> source, long version) {
+        final Warm previous = warm.get(source);
+        final Budget current = new Budget(maxSize - size + (previous != null ? previous.size : 0));
+        prefetching = source;
+        prefetchingVersion = version;
+        budget = current;
+        pending = io.submit(source.getName() + PREFETCH, () -> {
+                    final T contents = source.read(current);
+                    return new Warm(contents, version, source.sizeOf(contents));
+                },
+                new StorageIO.Callback<Warm>() {
+                    @Override
+                    public void onSuccess(Warm result) {
+                        finish();
+                        overruns.remove(source);
+                        remove(source);
+                        warm.put(source, result);
+                        size += result.size;
+                        deliver(result.contents, null);
+                        schedule();
+                    }
+
+                    @Override
+                    public void onError(Exception e) {
+                        finish();
+                        if (e instanceof InterruptedIOException) {
+                            yielded++;
+                        } else if (e instanceof BudgetExceededException
+                                && ((BudgetExceededException) e).timeout
+                                && countOverrun(source, version) < MAX_TIME_OVERRUNS) {
+                            // Retried on a later idle time, as the storage may be less busy
+                        } else {
+                            // Not prefetched again until modified
+                            exceeded.put(source, version);
+                            if (!(e instanceof BudgetExceededException)) {
+                                Log.w(TAG, "Cannot prefetch " + source.getName(), e);
+                            }
+                        }
+                        deliver(null, e);
+                        schedule();
+                    }
+                });
+    }
+
+    // Counts a new time budget overrun of the version of the source, and returns the total
+    private int countOverrun(Source<?> source, long version) {
+        final Overruns previous = overruns.get(source);
+        final int count = previous != null && previous.version == version ? previous.count + 1 : 1;
+        overruns.put(source, new Overruns(version, count));
+        return count;
+    }
+
+    private void finish() {
+        prefetching = null;
+        pending = null;
+        budget = null;
+    }
+
+    // Delivers the contents prefetched (or the error found) to the callback waiting for them
+    private void deliver(Object contents, Exception e) {
+        final StorageIO.Callback<Object> callback = waiting;
+        waiting = null;
+        if (callback == null) {
+            return;
+        }
+        if (e == null) {
+            callback.onSuccess(contents);
+        } else {
+            callback.onError(e);
+        }
+    }
+
+    // Delivers the contents of the source to the callback if already prefetched (at once),
+    // or once prefetched if in progress, and returns whether so.
+    // Otherwise, the contents must be read as usual
+    @SuppressWarnings("unchecked")
+    public <T> boolean get(Source<T> source, StorageIO.Callback<T> callback) {
+        final Warm contents = warm.get(source);
+        if (contents != null && contents.version == source.getVersion()) {
+            hits++;
+            callback.onSuccess((T) contents.contents);
+            return true;
+        }
+        // Outdated contents are discarded (they will be prefetched again)
+        remove(source);
+        if (source == prefetching && prefetchingVersion == source.getVersion()) {
+            joined++;
+            // The prefetch continues as a regular read
+            budget.required = true;
+            waiting = (StorageIO.Callback<Object>) callback;
+            return true;
+        }
+        misses++;
+        return false;
+    }
+
+    // Discards the contents of the source (if prefetched)
+    private void remove(Source<?> source) {
+        final Warm contents = warm.remove(source);
+        if (contents != null) {
+            size -= contents.size;
+        }
+    }
+
+    // Stops waiting for the prefetch in progress (if any) to be delivered
+    // (e.g., another source has been selected), so it yields again to other operations
+    public void release() {
+        waiting = null;
+        if (budget != null) {
+            budget.required = false;
+        }
+    }
+
+    // Cancels the prefetch in progress (unless its contents are already required)
+    // and discards the contents prefetched (e.g., when memory is low)
+    public void clear() {
+        if (pending != null && waiting == null) {
+            pending.cancel(true);
+            finish();
+        }
+        warm.clear();
+        size = 0;
+    }
+
+    // Cancels the prefetch in progress (if any) and releases the thread
+    public void shutdown() {
+        waiting = null;
+        clear();
+        io.shutdownNow();
+    }
+
+    // Gets a summary of the usage and effectiveness of the prefetches
+    @Override
+    public String toString() {
+        return "Prefetcher{size=" + size + "/" + maxSize
+                + ", warm=" + warm.size() + "/" + sources.size()
+                + ", hits=" + hits
+                + ", joined=" + joined
+                + ", misses=" + misses
+                + ", yielded=" + yielded
+                + ", exceeded=" + exceeded.size() + "}";
+    }
+}
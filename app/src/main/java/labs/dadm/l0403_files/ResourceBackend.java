@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.Resources;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+// Storage target consisting of a raw resource packaged with the application (read only)
+public class ResourceBackend implements StorageBackend {
+
+    private final String name;
+    private final Resources resources;
+    private final int id;
+
+    public ResourceBackend(String name, Resources resources, int id) {
+        this.name = name;
+        this.resources = resources;
+        this.id = id;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getPermission(boolean write) {
+        return null;
+    }
+
+    @Override
+    public boolean isExternal() {
+        return false;
+    }
+
+    @Override
+    public boolean isWritable() {
+        // Resources cannot be overwritten
+        return false;
+    }
+
+    @Override
+    public Stat stat() throws IOException {
+        // The length is only available if the resource is not compressed in the APK
+        try {
+            final AssetFileDescriptor afd = resources.openRawResourceFd(id);
+            try {
+                return new Stat(afd.getLength(), Stat.UNKNOWN);
+            } finally {
+                afd.close();
+            }
+        } catch (Resources.NotFoundException e) {
+            return new Stat(Stat.UNKNOWN, Stat.UNKNOWN);
+        }
+    }
+
+    @Override
+    public InputStream openInputStream() {
+        return resources.openRawResource(id);
+    }
+
+    @Override
+    public OutputStream openOutputStream() throws IOException {
+        throw new IOException("Resources cannot be overwritten");
+    }
+
+    @Override
+    public void delete() throws IOException {
+        throw new IOException("Resources cannot be deleted");
+    }
+}
@@ -0,0 +1,522 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Full-text index of the documents stored by the app, so words can be found without reading
+// their contents again. Each document has its own segment file, which is rewritten on a
+// background thread whenever the document is saved (only the latest version is indexed if
+// several saves are requested meanwhile). Segments have the following format:
+// [magic (int)][version (int)][chars indexed (long)][term count (int)]
+// [term (UTF)][occurrences (int)][bytes of its postings (int)] (per term, sorted)
+// [postings] (per term and occurrence, its offset in chars delta-encoded and its length
+// in chars, as varints). Terms are truncated to MAX_TERM_LENGTH chars, but each occurrence
+// keeps the length of the whole word. Only the dictionary of terms is kept in memory,
+// postings are read from the file
+public class SearchIndex {
+
+    // Tag of the messages logged
+    private static final String TAG = "SearchIndex";
+
+    // Values identifying the format of the segments
+    private static final int MAGIC = 0x53494458;
+    private static final int VERSION = 2;
+    // Suffix of the segment files
+    private static final String SEGMENT_SUFFIX = ".idx";
+    // Suffix of the segment files being written
+    private static final String TEMP_SUFFIX = ".tmp";
+    // Key measuring the updates of the index
+    private static final String METRICS_UPDATE = "search.update";
+
+    // Chars of a term that are indexed (longer words are truncated in the dictionary)
+    public static final int MAX_TERM_LENGTH = 32;
+
+    // Occurrences of a term in a document
+    public static class Hit {
+        // Key of the document
+        public final String key;
+        // Number of occurrences, and offset (in chars) of the first ones
+        public final int count;
+        public final int[] offsets;
+        // Length (in chars) of each of those occurrences, as found in the text
+        public final int[] lengths;
+
+        Hit(String key, int count, int[] offsets, int[] lengths) {
+            this.key = key;
+            this.count = count;
+            this.offsets = offsets;
+            this.lengths = lengths;
+        }
+    }
+
+    private final File dir;
+    private final IoMetrics metrics;
+    // Maximum number of terms indexed per document (the rest of the document is not indexed)
+    private final int maxTerms;
+    // Dictionaries of the segments, by document key (null until loaded).
+    // Guarded by their own lock, so queries never delay the requests to update the index
+    private final Object segmentsLock = new Object();
+    private HashMap<String, Segment> segments;
+
+    // Sources waiting to be indexed by document key (null to remove the document),
+    // also used as the lock of the requests
+    private final LinkedHashMap<String, TextStreamLoader.Source> pending = new LinkedHashMap<>();
+    // Thread updating the segments (created on demand)
+    private ExecutorService updater;
+
+    public SearchIndex(File dir, int maxTerms, IoMetrics metrics) {
+        this.dir = dir;
+        this.maxTerms = maxTerms;
+        this.metrics = metrics;
+    }
+
+    // Indexes the text as the contents of the document on a background thread, which takes
+    // it page by page. The text must not be modified afterwards (e.g., a String or a
+    // TextSnapshot), so it is not copied by the caller
+    public void requestUpdate(String key, CharSequence text) {
+        requestUpdate(key, consumer -> TextStreamLoader.load(text, consumer));
+    }
+
+    // Indexes the contents of the document on a background thread, reading them from the source
+    public void requestUpdate(String key, TextStreamLoader.Source source) {
+        schedule(key, source);
+    }
+
+    // Indexes the contents of the document on a background thread, unless already indexed
+    public void requestUpdateIfMissing(String key, TextStreamLoader.Source source) {
+        schedule(key, new IfMissing(source));
+    }
+
+    // Removes the document from the index on a background thread
+    public void requestRemove(String key) {
+        schedule(key, null);
+    }
+
+    // Keeps the latest source of the document, and starts processing them if required
+    private void schedule(String key, TextStreamLoader.Source source) {
+        synchronized (pending) {
+            final boolean idle = pending.isEmpty();
+            pending.remove(key);
+            pending.put(key, source);
+            if (idle) {
+                if (updater == null) {
+                    updater = Executors.newSingleThreadExecutor(runnable -> {
+                        final Thread thread = new Thread(runnable, "search-index");
+                        thread.setDaemon(true);
+                        thread.setPriority(Thread.MIN_PRIORITY);
+                        return thread;
+                    });
+                }
+                updater.execute(this::processPending);
+            }
+        }
+    }
+
+    // Indexes the pending sources one by one, until there are none left
+    // (executed on a background thread)
+    private void processPending() {
+        while (true) {
+            final String key;
+            final TextStreamLoader.Source source;
+            synchronized (pending) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                final Map.Entry<String, TextStreamLoader.Source> next =
+                        pending.entrySet().iterator().next();
+                key = next.getKey();
+                source = next.getValue();
+                pending.remove(key);
+            }
+            try {
+                if (metrics != null) {
+                    metrics.measure(METRICS_UPDATE, () -> {
+                        update(key, source);
+                        return null;
+                    }).call();
+                } else {
+                    update(key, source);
+                }
+            } catch (FileNotFoundException e) {
+                // The document no longer exists
+                remove(key);
+            } catch (Exception e) {
+                Log.w(TAG, "Cannot index " + key, e);
+            }
+        }
+    }
+
+    // Rewrites the segment of the document with its current contents (null to remove it)
+    private void update(String key, TextStreamLoader.Source source) throws IOException {
+        if (source == null) {
+            remove(key);
+            return;
+        }
+        if (source instanceof IfMissing) {
+            // Segments of a previous version are indexed again
+            if (Segment.isCurrent(getSegmentFile(key))) {
+                return;
+            }
+            source = ((IfMissing) source).source;
+        }
+        final Tokenizer tokenizer = new Tokenizer(maxTerms);
+        final long chars = source.load(tokenizer);
+        tokenizer.finish();
+
+        // Sort the terms, so they can be looked up by binary search
+        final String[] terms = tokenizer.postings.keySet().toArray(new String[0]);
+        Arrays.sort(terms);
+        final byte[][] postings = new byte[terms.length][];
+        final int[] counts = new int[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            final Postings list = tokenizer.postings.get(terms[i]);
+            postings[i] = list.encode();
+            counts[i] = list.count;
+        }
+
+        // Write the new segment and replace the previous one
+        final File segment = getSegmentFile(key);
+        final File temp = new File(segment.getPath() + TEMP_SUFFIX);
+        dir.mkdirs();
+        final DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(chars);
+            out.writeInt(terms.length);
+            for (int i = 0; i < terms.length; i++) {
+                out.writeUTF(terms[i]);
+                out.writeInt(counts[i]);
+                out.writeInt(postings[i].length);
+            }
+            for (byte[] bytes : postings) {
+                out.write(bytes);
+            }
+        } finally {
+            out.close();
+        }
+        IoMetrics.addBytes(temp.length());
+        synchronized (segmentsLock) {
+            if (!temp.renameTo(segment)) {
+                temp.delete();
+                throw new IOException("Cannot replace " + segment);
+            }
+            if (segments != null) {
+                segments.put(key, Segment.read(key, segment));
+            }
+        }
+    }
+
+    // Deletes the segment of the document
+    private void remove(String key) {
+        synchronized (segmentsLock) {
+            getSegmentFile(key).delete();
+            if (segments != null) {
+                segments.remove(key);
+            }
+        }
+    }
+
+    // Finds the documents containing every word of the query, and returns the occurrences
+    // of its least frequent word (up to maxOffsets per document), sorted by number of
+    // occurrences (executed on a background thread).
+    // Segments are not replaced while their postings are read
+    public List<Hit> search(String query, int maxOffsets) throws IOException {
+        final Tokenizer tokenizer = new Tokenizer(Integer.MAX_VALUE);
+        tokenizer.onPage(query);
+        tokenizer.finish();
+        final ArrayList<Hit> hits = new ArrayList<>();
+        if (tokenizer.postings.isEmpty()) {
+            return hits;
+        }
+
+        synchronized (segmentsLock) {
+            findHits(tokenizer, maxOffsets, hits);
+        }
+        Collections.sort(hits, (a, b) -> Integer.compare(b.count, a.count));
+        return hits;
+    }
+
+    // Adds the occurrences of the least frequent term of every segment containing all of them
+    private void findHits(Tokenizer tokenizer, int maxOffsets, ArrayList<Hit> hits)
+            throws IOException {
+        for (Segment segment : getSegments()) {
+            // Every word must be found, and the least frequent one is reported
+            int rarest = -1;
+            for (String term : tokenizer.postings.keySet()) {
+                final int found = Arrays.binarySearch(segment.terms, term);
+                if (found < 0) {
+                    rarest = -1;
+                    break;
+                }
+                if (rarest < 0 || segment.counts[found] < segment.counts[rarest]) {
+                    rarest = found;
+                }
+            }
+            if (rarest >= 0) {
+                final int count = Math.min(maxOffsets, segment.counts[rarest]);
+                final int[] offsets = new int[count];
+                final int[] lengths = new int[count];
+                segment.readOccurrences(rarest, offsets, lengths);
+                hits.add(new Hit(segment.key, segment.counts[rarest], offsets, lengths));
+            }
+        }
+    }
+
+    // Gets the dictionaries of every segment, loading them the first time
+    // (segmentsLock must be held)
+    private Iterable<Segment> getSegments() throws IOException {
+        if (segments == null) {
+            segments = new HashMap<>();
+            final File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    final String name = file.getName();
+                    if (name.endsWith(SEGMENT_SUFFIX)) {
+                        final String key =
+                                name.substring(0, name.length() - SEGMENT_SUFFIX.length());
+                        try {
+                            segments.put(key, Segment.read(key, file));
+                        } catch (IOException e) {
+                            // Corrupted segments are ignored until the document is saved again
+                            Log.w(TAG, "Ignoring segment " + name, e);
+                        }
+                    }
+                }
+            }
+        }
+        return segments.values();
+    }
+
+    // Gets the segment file of the document (keys are names of storage targets,
+    // so they are valid file names)
+    private File getSegmentFile(String key) {
+        return new File(dir, key + SEGMENT_SUFFIX);
+    }
+
+    // Source to be indexed only if the document has no segment yet
+    private static class IfMissing implements TextStreamLoader.Source {
+        final TextStreamLoader.Source source;
+
+        IfMissing(TextStreamLoader.Source source) {
+            this.source = source;
+        }
+
+        @Override
+        public long load(TextStreamLoader.PageConsumer consumer) throws IOException {
+            return source.load(consumer);
+        }
+    }
+
+    // Dictionary of terms of a segment
+    private static class Segment {
+        final String key;
+        final File file;
+        final String[] terms;
+        final int[] counts;
+        // Position of the postings of each term in the file
+        final long[] positions;
+
+        private Segment(String key, File file, String[] terms, int[] counts, long[] positions) {
+            this.key = key;
+            this.file = file;
+            this.terms = terms;
+            this.counts = counts;
+            this.positions = positions;
+        }
+
+        // Reads the dictionary of the segment
+        static Segment read(String key, File file) throws IOException {
+            final DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    throw new IOException("Unknown format " + file);
+                }
+                in.readLong();
+                final int count = in.readInt();
+                final String[] terms = new String[count];
+                final int[] counts = new int[count];
+                final long[] positions = new long[count + 1];
+                final int[] lengths = new int[count];
+                for (int i = 0; i < count; i++) {
+                    terms[i] = in.readUTF();
+                    counts[i] = in.readInt();
+                    lengths[i] = in.readInt();
+                }
+                // Postings follow the dictionary in the same order, up to the end of the file
+                positions[0] = file.length();
+                for (int length : lengths) {
+                    positions[0] -= length;
+                }
+                for (int i = 0; i < count; i++) {
+                    positions[i + 1] = positions[i] + lengths[i];
+                }
+                return new Segment(key, file, terms, counts, positions);
+            } finally {
+                in.close();
+            }
+        }
+
+        // Whether the file is a segment of the current version
+        static boolean isCurrent(File file) {
+            try {
+                final DataInputStream in = new DataInputStream(new FileInputStream(file));
+                try {
+                    return in.readInt() == MAGIC && in.readInt() == VERSION;
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        // Reads the offsets and lengths of the first occurrences of the term
+        // (as many as the arrays can hold)
+        void readOccurrences(int term, int[] offsets, int[] lengths) throws IOException {
+            final byte[] bytes = new byte[(int) (positions[term + 1] - positions[term])];
+            final RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                raf.seek(positions[term]);
+                raf.readFully(bytes);
+            } finally {
+                raf.close();
+            }
+            final int[] position = new int[1];
+            int offset = 0;
+            for (int i = 0; i < offsets.length; i++) {
+                offset += readVarint(bytes, position);
+                offsets[i] = offset;
+                lengths[i] = readVarint(bytes, position);
+            }
+        }
+
+        // Decodes the varint at the position, which is moved after it
+        private static int readVarint(byte[] bytes, int[] position) {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[position[0]++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+
+    // Offsets and lengths of the occurrences of a term, in increasing order of offset
+    private static class Postings {
+        int[] offsets = new int[4];
+        int[] lengths = new int[4];
+        int count;
+
+        void add(int offset, int length) {
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+                lengths = Arrays.copyOf(lengths, count * 2);
+            }
+            offsets[count] = offset;
+            lengths[count++] = length;
+        }
+
+        // Encodes the differences between consecutive offsets, and the lengths, as varints
+        byte[] encode() {
+            final byte[] bytes = new byte[count * 10];
+            int length = 0;
+            int previous = 0;
+            for (int i = 0; i < count; i++) {
+                length = writeVarint(offsets[i] - previous, bytes, length);
+                length = writeVarint(lengths[i], bytes, length);
+                previous = offsets[i];
+            }
+            return Arrays.copyOf(bytes, length);
+        }
+
+        // Encodes the value as a varint at the position, and returns the position after it
+        private static int writeVarint(int value, byte[] bytes, int position) {
+            while ((value & ~0x7F) != 0) {
+                bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[position++] = (byte) value;
+            return position;
+        }
+    }
+
+    // Splits the text into lower case terms (sequences of letters and digits), keeping the
+    // offset of each occurrence. Pages are processed as they are read, so terms may be
+    // split between pages
+    private static class Tokenizer implements TextStreamLoader.PageConsumer {
+        final HashMap<String, Postings> postings = new HashMap<>();
+        private final int maxTerms;
+        private final StringBuilder term = new StringBuilder(MAX_TERM_LENGTH);
+        private int termStart;
+        private int termLength;
+        private int offset;
+        private int terms;
+
+        Tokenizer(int maxTerms) {
+            this.maxTerms = maxTerms;
+        }
+
+        @Override
+        public void onPage(String page) {
+            for (int i = 0; i < page.length(); i++, offset++) {
+                final char c = page.charAt(i);
+                if (Character.isLetterOrDigit(c)) {
+                    if (termLength == 0) {
+                        termStart = offset;
+                    }
+                    if (termLength < MAX_TERM_LENGTH) {
+                        term.append(Character.toLowerCase(c));
+                    }
+                    termLength++;
+                } else if (termLength > 0) {
+                    finish();
+                }
+            }
+        }
+
+        // Adds the term being read (if any)
+        void finish() {
+            if (termLength > 0 && terms < maxTerms) {
+                final String key = term.toString();
+                Postings list = postings.get(key);
+                if (list == null) {
+                    list = new Postings();
+                    postings.put(key, list);
+                }
+                list.add(termStart, termLength);
+                terms++;
+            }
+            term.setLength(0);
+            termLength = 0;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.Future;
+
+// Storage target the contents of the EditText can be read from and written to
+// (application resources, internal storage, external storage, MediaStore, or documents).
+// Each target provides the fastest way to access its contents, while the activity
+// only deals with the user interaction required (permissions, pickers, etc.).
+// Blocking methods must be executed on a background thread,
+// and the asynchronous ones execute them through the given StorageIO
+public interface StorageBackend {
+
+    // Size (in bytes) and time of last modification (in milliseconds) of the contents
+    class Stat {
+        // Value of the attributes that cannot be determined
+        public static final long UNKNOWN = -1;
+
+        public final long length;
+        public final long lastModified;
+
+        public Stat(long length, long lastModified) {
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+    }
+
+    // Suffixes of the keys measuring the asynchronous operations of each storage target
+    String STAT = ".stat";
+    String OPEN = ".open";
+    String READ = ".read";
+    String WRITE = ".write";
+
+    // Name identifying the storage target
+    String getName();
+
+    // Gets the permission required to read or write the contents at the current API level
+    // (null if not required)
+    String getPermission(boolean write);
+
+    // Whether the contents are located in external storage, which must be mounted
+    boolean isExternal();
+
+    // Whether the contents can be replaced
+    boolean isWritable();
+
+    // Gets the attributes of the contents
+    // (FileNotFoundException if they do not exist yet)
+    Stat stat() throws IOException;
+
+    // Opens a stream to read the raw contents
+    InputStream openInputStream() throws IOException;
+
+    // Opens a stream to replace the raw contents
+    OutputStream openOutputStream() throws IOException;
+
+    // Deletes the contents
+    void delete() throws IOException;
+
+    // Delivers the contents as UTF-8 text to the consumer page by page (decompressing them
+    // if stored in CompressedBlockFormat), and returns the number of chars read
+    default long read(TextStreamLoader.PageConsumer consumer) throws IOException {
+        return TextStreamLoader.load(
+                CompressedBlockFormat.decompressIfNeeded(IoMetrics.counting(openInputStream())),
+                consumer);
+    }
+
+    // Replaces the contents with the UTF-8 encoded text,
+    // according to the given durability policy (if supported).
+    // The text must not change afterwards (e.g., a String or a TextSnapshot), as it may be kept
+    // to be read later on (e.g., to be indexed, or compared with the next version saved)
+    default void write(CharSequence content, int durability) throws IOException {
+        final OutputStream os = IoMetrics.counting(openOutputStream());
+        try {
+            TextCodec.encode(content, os);
+        } finally {
+            os.close();
+        }
+    }
+
+    default Future<Stat> stat(StorageIO io, StorageIO.Callback<Stat> callback) {
+        return io.submit(getName() + STAT, this::stat, callback);
+    }
+
+    default Future<InputStream> openInputStream(
+            StorageIO io, StorageIO.Callback<InputStream> callback) {
+        return io.submit(getName() + OPEN, this::openInputStream, callback);
+    }
+
+    default Future<OutputStream> openOutputStream(
+            StorageIO io, StorageIO.Callback<OutputStream> callback) {
+        return io.submit(getName() + OPEN, this::openOutputStream, callback);
+    }
+
+    default Future<Long> read(StorageIO io, TextStreamLoader.PageConsumer consumer,
+                              StorageIO.Callback<Long> callback) {
+        return io.submit(getName() + READ, () -> read(consumer), callback);
+    }
+
+    // The contents are encoded straight from the text given, which is never copied
+    // (snapshots of an EditText are only copied if it is edited, see TextSnapshot)
+    default Future<Void> write(StorageIO io, CharSequence content, int durability,
+                               StorageIO.Callback<Void> callback) {
+        return io.submit(getName() + WRITE, () -> {
+            write(content, durability);
+            return null;
+        }, callback);
+    }
+}
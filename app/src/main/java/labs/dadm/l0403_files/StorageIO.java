@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs storage operations (files, ContentProviders) on a bounded pool of background threads
+// and delivers their results back on the main thread, so the UI is never blocked by I/O
+public class StorageIO {
+
+    // Number of threads available for storage operations
+    private static final int THREADS = 2;
+    // Maximum number of operations waiting to be executed
+    private static final int QUEUE_CAPACITY = 64;
+    // Time an idle thread is kept alive before being released
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    // Callback notified on the main thread once the background operation finishes
+    public interface Callback<T> {
+        void onSuccess(T result);
+
+        void onError(Exception e);
+
+        // Notified on the main thread with the result of an operation cancelled once
+        // completed, which is never delivered, so it can be released (e.g., a retained bitmap)
+        default void onDiscarded(T result) {
+        }
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final Handler handler;
+    // Measures the operations submitted with a key (null if not measured)
+    private final IoMetrics metrics;
+
+    public StorageIO() {
+        this(THREADS, QUEUE_CAPACITY, null);
+    }
+
+    public StorageIO(IoMetrics metrics) {
+        this(THREADS, QUEUE_CAPACITY, metrics);
+    }
+
+    public StorageIO(int threads, int queueCapacity, IoMetrics metrics) {
+        this(threads, queueCapacity, Process.THREAD_PRIORITY_BACKGROUND, metrics);
+    }
+
+    public StorageIO(int threads, int queueCapacity, int priority, IoMetrics metrics) {
+        this.metrics = metrics;
+
+        // Threads are created with background priority (or lower),
+        // so they do not compete with the UI
+        final AtomicInteger count = new AtomicInteger();
+        final ThreadFactory factory = runnable -> new Thread(() -> {
+            Process.setThreadPriority(priority);
+            runnable.run();
+        }, "storage-io-" + count.incrementAndGet());
+
+        executor = new ThreadPoolExecutor(
+                threads, threads,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueCapacity),
+                factory);
+        executor.allowCoreThreadTimeOut(true);
+
+        // Results are always delivered on the main thread
+        handler = new Handler(Looper.getMainLooper());
+    }
+
+    // Executes the operation on a background thread and notifies the callback (if any)
+    // on the main thread. The returned Future can be used to cancel the operation:
+    // once cancelled, the callback is never notified
+    public <T> Future<T> submit(Callable<T> operation, Callback<T> callback) {
+        return submit(null, operation, callback);
+    }
+
+    // Executes the operation as submit(operation, callback) does, measuring it under the
+    // given key, which identifies the storage target and the operation (e.g., "internal.read")
+    public <T> Future<T> submit(String key, Callable<T> operation, Callback<T> callback) {
+        final Task<T> task = new Task<>(
+                metrics != null && key != null ? metrics.measure(key, operation) : operation,
+                callback);
+        try {
+            execute(task);
+        } catch (RejectedExecutionException e) {
+            // Too many pending operations (or already shut down)
+            task.cancel(false);
+            if (callback != null) {
+                handler.post(() -> callback.onError(e));
+            }
+        }
+        return task;
+    }
+
+    // Queues the task, first removing from the queue those operations already cancelled
+    // if there is no room left for it
+    private void execute(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            if (executor.isShutdown()) {
+                throw e;
+            }
+            executor.purge();
+            executor.execute(task);
+        }
+    }
+
+    // Whether any operation is being executed or waiting to be executed
+    public boolean isBusy() {
+        return executor.getActiveCount() > 0 || !executor.getQueue().isEmpty();
+    }
+
+    // Executes the runnable on the main thread
+    public void post(Runnable runnable) {
+        handler.post(runnable);
+    }
+
+    // Releases the threads once the pending operations are completed
+    // (operations that must not be completed, like reads, should be cancelled beforehand)
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    // Cancels every pending operation and releases the threads
+    public void shutdownNow() {
+        executor.shutdownNow();
+    }
+
+    // Operation that posts its result to the main thread when completed
+    private class Task<T> extends FutureTask<T> {
+
+        private final Callback<T> callback;
+        // Cancellation must also be checked on the main thread,
+        // as the operation could be cancelled once its result has been posted
+        private volatile boolean cancelled;
+        // Whether the result has already been discarded, so it is released only once
+        private final AtomicBoolean discarded = new AtomicBoolean();
+
+        Task(Callable<T> operation, Callback<T> callback) {
+            super(operation);
+            this.callback = callback;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            cancelled = true;
+            return super.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        protected void set(T result) {
+            super.set(result);
+            // The result is lost if the operation was cancelled while running
+            if (cancelled) {
+                discard(result);
+            }
+        }
+
+        // Hands the result never delivered back to the callback
+        private void discard(T result) {
+            if (callback != null && result != null && discarded.compareAndSet(false, true)) {
+                handler.post(() -> callback.onDiscarded(result));
+            }
+        }
+
+        @Override
+        protected void done() {
+            if (cancelled || callback == null) {
+                return;
+            }
+            // Get the result (or the exception thrown) of the operation
+            T result = null;
+            Exception exception = null;
+            try {
+                result = get();
+            } catch (ExecutionException e) {
+                exception = e.getCause() instanceof Exception ?
+                        (Exception) e.getCause() : new Exception(e.getCause());
+            } catch (Exception e) {
+                exception = e;
+            }
+            // Deliver the result on the main thread
+            final T finalResult = result;
+            final Exception finalException = exception;
+            handler.post(() -> {
+                if (!cancelled) {
+                    if (finalException == null) {
+                        callback.onSuccess(finalResult);
+                    } else {
+                        callback.onError(finalException);
+                    }
+                } else if (finalException == null) {
+                    discard(finalResult);
+                }
+            });
+        }
+    }
+}
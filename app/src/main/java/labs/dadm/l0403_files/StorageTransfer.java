@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+// Copies (or moves) the raw contents of a storage target to another one, without decoding
+// them into chars. Between files (and file descriptors) the bytes are transferred by the
+// kernel (FileChannel.transferTo), otherwise they go through a reusable direct buffer.
+// Compressed files (see CompressedBlockFormat) are only copied as they are into targets that
+// store compressed files too, otherwise they are decompressed (e.g., documents read by other
+// apps). Sources keeping a journal of edits not compacted yet (see JournalBackend) are the
+// exception to copying without decoding: their text is replayed and encoded as it is read.
+// Files are first transferred into a partial file next to the destination, which replaces it
+// once completed. If the transfer is interrupted, it is resumed from the partial file,
+// provided that the source has not changed
+public class StorageTransfer {
+
+    // Bytes transferred by the kernel at once (between progress notifications)
+    public static final long TRANSFER_CHUNK = 8 * 1024 * 1024;
+    // Size of the buffer used when the kernel cannot transfer the bytes
+    public static final int BUFFER_SIZE = 1024 * 1024;
+    // Suffix of the partial files
+    private static final String PARTIAL_SUFFIX = ".partial";
+
+    // Receives the progress of the transfer (executed on a background thread)
+    public interface Progress {
+        // The total is Stat.UNKNOWN if the size of the source cannot be determined
+        void onProgress(long transferred, long total);
+    }
+
+    private StorageTransfer() {
+    }
+
+    // Copies the contents of the source into the target, and returns the number of bytes
+    // of the target (executed on a background thread). Interrupting the thread cancels it
+    public static long copy(StorageBackend source, StorageBackend target, Progress progress)
+            throws IOException {
+        if (source == target) {
+            throw new IllegalArgumentException("Cannot copy " + source.getName() + " into itself");
+        }
+        final StorageBackend.Stat stat = source.stat();
+        // Compressed contents are only kept as they are if the target also stores them so
+        final boolean decompress = !(target instanceof FileBackend
+                && ((FileBackend) target).isCompressed());
+
+        if (!(target instanceof FileBackend)) {
+            // Contents provided by other apps cannot be resumed, as their state is unknown
+            final InputStream in = open(source, decompress);
+            try {
+                final OutputStream out = target.openOutputStream();
+                try {
+                    return transfer(in, out, 0, getTotal(in, stat), progress);
+                } finally {
+                    out.close();
+                }
+            } finally {
+                in.close();
+            }
+        }
+
+        final FileBackend file = (FileBackend) target;
+        final File partial = getPartialFile(file.getFile(), source, stat);
+        final long transferred;
+        InputStream in = open(source, decompress);
+        try {
+            final FileOutputStream out = new FileOutputStream(partial, true);
+            try {
+                // Resume from the bytes already transferred (if any)
+                long offset = out.getChannel().size();
+                if (offset > 0 && skip(in, offset) != offset) {
+                    // The source is shorter than expected, so start again
+                    in.close();
+                    in = open(source, decompress);
+                    out.getChannel().truncate(0);
+                    offset = 0;
+                }
+                transferred = transfer(in, out, offset, getTotal(in, stat), progress);
+                // Every byte must be in the storage device before replacing the target
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+        file.replaceWith(partial);
+        return transferred;
+    }
+
+    // Copies the contents of the source into the target and then deletes the source,
+    // and returns the number of bytes of the target (executed on a background thread)
+    public static long move(StorageBackend source, StorageBackend target, Progress progress)
+            throws IOException {
+        final long transferred = copy(source, target, progress);
+        source.delete();
+        return transferred;
+    }
+
+    // Opens the raw contents of the source, decompressed if required. Plain files are not
+    // wrapped, so the kernel can still transfer their bytes
+    private static InputStream open(StorageBackend source, boolean decompress)
+            throws IOException {
+        final InputStream in = source.openInputStream();
+        if (!decompress) {
+            return in;
+        }
+        try {
+            if (in instanceof FileInputStream && isSeekable(((FileInputStream) in).getChannel())) {
+                return CompressedBlockFormat.isCompressed(((FileInputStream) in).getChannel()) ?
+                        new CompressedBlockFormat.BlockInputStream(in) : in;
+            }
+            return CompressedBlockFormat.decompressIfNeeded(in);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    // Gets the number of bytes to be transferred from the stream
+    // (the size of decompressed contents is not known beforehand)
+    private static long getTotal(InputStream in, StorageBackend.Stat stat) {
+        return in instanceof CompressedBlockFormat.BlockInputStream ?
+                StorageBackend.Stat.UNKNOWN : stat.length;
+    }
+
+    // Gets the partial file for transferring the given version of the source into the target.
+    // Partial files of other sources (or versions) are deleted, as they cannot be resumed
+    private static File getPartialFile(File target, StorageBackend source, StorageBackend.Stat stat) {
+        // Without the time of last modification, changes in the source cannot be detected
+        final boolean resumable = stat.length != StorageBackend.Stat.UNKNOWN
+                && stat.lastModified != StorageBackend.Stat.UNKNOWN;
+        final String fingerprint = Integer.toHexString(
+                (source.getName() + ':' + stat.length + ':' + stat.lastModified).hashCode());
+        final File partial =
+                new File(target.getParentFile(), target.getName() + '.' + fingerprint + PARTIAL_SUFFIX);
+
+        final File[] files = target.getParentFile().listFiles();
+        if (files != null) {
+            for (File other : files) {
+                if (other.getName().startsWith(target.getName() + '.')
+                        && other.getName().endsWith(PARTIAL_SUFFIX)
+                        && (!resumable || !other.equals(partial))) {
+                    other.delete();
+                }
+            }
+        }
+        return partial;
+    }
+
+    // Skips the given number of bytes of the stream, and returns how many were skipped
+    private static long skip(InputStream in, long count) throws IOException {
+        if (in instanceof FileInputStream) {
+            final FileChannel channel = ((FileInputStream) in).getChannel();
+            if (isSeekable(channel)) {
+                final long skipped = Math.min(count, channel.size());
+                channel.position(skipped);
+                return skipped;
+            }
+        }
+        // Streams that cannot be positioned (e.g., pipes) are read until the offset
+        final byte[] discarded = new byte[TextStreamLoader.CHUNK_SIZE];
+        long skipped = 0;
+        int read;
+        while (skipped < count && (read = in.read(discarded, 0,
+                (int) Math.min(discarded.length, count - skipped))) != -1) {
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    // Transfers the rest of the input stream to the output stream, and returns the position
+    // reached, starting from the given one
+    private static long transfer(InputStream in, OutputStream out, long position, long total,
+                                 Progress progress) throws IOException {
+        final ReadableByteChannel source = in instanceof FileInputStream ?
+                ((FileInputStream) in).getChannel() : Channels.newChannel(in);
+        final WritableByteChannel target = out instanceof FileOutputStream ?
+                ((FileOutputStream) out).getChannel() : Channels.newChannel(out);
+        final long start = position;
+
+        if (source instanceof FileChannel && isSeekable((FileChannel) source)) {
+            // The kernel transfers the bytes without copying them into the app
+            final FileChannel channel = (FileChannel) source;
+            long transferred;
+            while ((transferred = channel.transferTo(position, TRANSFER_CHUNK, target)) > 0) {
+                position += transferred;
+                notify(progress, position, total);
+            }
+        } else {
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            while (source.read(buffer) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    position += target.write(buffer);
+                }
+                buffer.clear();
+                notify(progress, position, total);
+            }
+        }
+        IoMetrics.addBytes(position - start);
+        return position;
+    }
+
+    // Notifies the progress, unless the transfer has been cancelled
+    private static void notify(Progress progress, long position, long total)
+            throws InterruptedIOException {
+        if (Thread.interrupted()) {
+            throw new InterruptedIOException();
+        }
+        if (progress != null) {
+            progress.onProgress(position, total);
+        }
+    }
+
+    // Whether the channel can be positioned (it is not a pipe or a socket)
+    private static boolean isSeekable(FileChannel channel) {
+        try {
+            channel.position(channel.position());
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,363 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files;
+
+import android.Manifest;
+import android.app.Application;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.os.Environment;
+import android.os.Process;
+import android.text.Editable;
+import android.widget.AdapterView;
+
+import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
+import androidx.lifecycle.AndroidViewModel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.concurrent.Future;
+
+// State of MainActivity kept while it is recreated (e.g., when the screen is rotated):
+// the storage targets and their threads, the contents already loaded (the EditText contents,
+// the rows of images, and the file displayed in the viewer), and the operations in progress.
+// The new activity reattaches to this state instead of reading everything again.
+// Results of operations are delivered to the activity attached when they finish, not to the one
+// that started them, and operations are only cancelled once the activity finishes for good
+public class StorageViewModel extends AndroidViewModel {
+
+    // Receives a value on the main thread, in the activity attached
+    public interface Delivery<T> {
+        void deliver(MainActivity activity, T value);
+    }
+
+    // Action to be executed on the main thread, in the activity attached
+    public interface Action {
+        void run(MainActivity activity);
+    }
+
+    // Measures the storage operations of each storage target
+    final IoMetrics metrics;
+    // Executes the interactive storage operations (reads, writes) on background threads
+    final StorageIO storageIO;
+    // Executes the long-running bulk operations (transfers, imports, batch exports)
+    final StorageIO bulkIO;
+    // Decodes the images displayed in the GridView on background threads
+    final StorageIO thumbnailIO;
+    // Replaces the contents of files atomically
+    final AtomicFileWriter atomicWriter;
+    // Storage targets, in the same order as displayed in the Spinner
+    final StorageBackend[] backends;
+    // Storage targets requiring specific user interaction
+    final MediaStoreBackend mediaBackend;
+    final DocumentBackend documentBackend;
+    // Full-text index of the files stored by the app
+    final SearchIndex searchIndex;
+    // Imports whole folders selected by the user (API > 20), one at a time
+    final DocumentTreeImporter importer;
+    // Bitmaps no longer used, reused to decode the images for the GridView and exports
+    final BitmapPool bitmapPool;
+    // Keeps the images already decoded for the GridView
+    final ThumbnailCache thumbnailCache;
+    // Rows of images in public media storage, and file displayed in the read-only viewer
+    final ThumbnailAdapter adapter;
+    final LineAdapter lineAdapter;
+    // Warms the contents of the storage targets likely to be selected next
+    final Prefetcher prefetcher;
+    final HashMap<StorageBackend, Prefetcher.Source<String>> prefetchedText = new HashMap<>();
+
+    // Position in the Spinner of the item whose contents are loaded (or being loaded)
+    int position = AdapterView.INVALID_POSITION;
+    // EditText contents handed over by the activity being recreated (null if none)
+    Editable text;
+
+    // Storage target (and whether it is to be written) waiting for the user to grant permission
+    StorageBackend pendingBackend;
+    boolean pendingWrite;
+    // Read operation in progress (if any), so it can be cancelled when no longer required
+    Future<?> pendingRead;
+    // Identifies the latest load, so pages from cancelled loads are never displayed
+    int loadGeneration;
+    // Occurrence to be selected once the contents are loaded (-1 if none)
+    int pendingSelectionStart = -1;
+    int pendingSelectionEnd = -1;
+    // Copy/move operation in progress (if any), so it can be cancelled
+    Future<Long> pendingTransfer;
+    // Source (and whether it is to be moved) waiting for the user to create the destination
+    StorageBackend transferSource;
+    boolean transferMove;
+    // Import in progress (if any), so it can be cancelled
+    Future<DocumentTreeImporter.Result> pendingImport;
+    // Path of the imported document displayed in the viewer (null if none)
+    String importedPath;
+
+    // Activity displaying the state (null while it is being recreated)
+    private MainActivity activity;
+    // Actions waiting for an activity to be attached
+    private final ArrayDeque<Action> undelivered = new ArrayDeque<>();
+
+    public StorageViewModel(@NonNull Application application) {
+        super(application);
+
+        // Storage operations are executed on background threads
+        metrics = new IoMetrics();
+        storageIO = new StorageIO(metrics);
+        bulkIO = new StorageIO(Utils.BULK_THREADS, Utils.BULK_QUEUE_CAPACITY, metrics);
+        thumbnailIO = new StorageIO(
+                Utils.THUMBNAIL_THREADS, Utils.THUMBNAIL_QUEUE_CAPACITY, metrics);
+        atomicWriter = new AtomicFileWriter(Utils.GROUP_COMMIT_WINDOW);
+
+        // Each storage target accesses its contents in the fastest way available
+        mediaBackend = new MediaStoreBackend("media", application.getContentResolver(),
+                application.getSharedPreferences(
+                        Utils.MEDIA_HASHES_PREFERENCES, Context.MODE_PRIVATE));
+        documentBackend = new DocumentBackend("documents", application.getContentResolver(),
+                Utils.DOCUMENT_BLOCK_SIZE);
+        backends = new StorageBackend[]{
+                // Application resources
+                new ResourceBackend("resources", application.getResources(),
+                        R.raw.app_resource_file),
+                // Application internal storage (saved as a journal of edits)
+                new JournalBackend("internal", application.getFilesDir(),
+                        "internal_storage_file", atomicWriter, Utils.JOURNAL_COMPACTION_RATIO,
+                        Utils.JOURNAL_COMPACTION_MIN_BYTES),
+                // Application external storage (permission required if API < 19)
+                new FileBackend("private_external", application.getExternalFilesDir(null),
+                        "external_storage_file", atomicWriter, true,
+                        Build.VERSION.SDK_INT < 19 ?
+                                Manifest.permission.READ_EXTERNAL_STORAGE : null,
+                        Build.VERSION.SDK_INT < 19 ?
+                                Manifest.permission.WRITE_EXTERNAL_STORAGE : null),
+                // Public media storage (Images)
+                mediaBackend,
+                // Public other storage (Storage Access Framework if API > 18)
+                Build.VERSION.SDK_INT > 18 ? documentBackend :
+                        new FileBackend("public_other",
+                                new File(Environment.getExternalStorageDirectory(), "Download"),
+                                "external_public_storage_file", atomicWriter, true,
+                                Manifest.permission.READ_EXTERNAL_STORAGE,
+                                Manifest.permission.WRITE_EXTERNAL_STORAGE)};
+        ((FileBackend) backends[Utils.INTERNAL_STORAGE])
+                .setCompressed(Utils.COMPRESS_INTERNAL_STORAGE);
+        ((FileBackend) backends[Utils.PRIVATE_EXTERNAL_STORAGE])
+                .setCompressed(Utils.COMPRESS_PRIVATE_EXTERNAL_STORAGE);
+
+        // Files that can be read without asking for permission are indexed as they are saved
+        searchIndex = new SearchIndex(new File(application.getFilesDir(), Utils.SEARCH_INDEX_DIR),
+                Utils.SEARCH_MAX_TERMS, metrics);
+        for (StorageBackend backend : backends) {
+            if (backend instanceof FileBackend && backend.getPermission(false) == null) {
+                ((FileBackend) backend).setSearchIndex(searchIndex);
+            }
+        }
+
+        importer = new DocumentTreeImporter(
+                application.getContentResolver(), Utils.IMPORT_THREADS, metrics);
+        // Imported text documents can be found by searching, and opened in the viewer
+        importer.setSearchIndex(searchIndex);
+
+        // Images in public media storage are queried and decoded in background
+        bitmapPool = new BitmapPool(Runtime.getRuntime().maxMemory() / Utils.BITMAP_POOL_FRACTION);
+        thumbnailCache = new ThumbnailCache(
+                (int) (Runtime.getRuntime().maxMemory() / Utils.THUMBNAIL_MEMORY_CACHE_FRACTION),
+                new File(application.getCacheDir(), Utils.THUMBNAIL_DISK_CACHE_DIR),
+                Utils.THUMBNAIL_DISK_CACHE_BYTES, bitmapPool);
+        adapter = new ThumbnailAdapter(
+                application, storageIO, thumbnailIO, thumbnailCache, bitmapPool);
+
+        // Large files are displayed line by line, reading only the visible lines
+        lineAdapter = new LineAdapter(storageIO);
+
+        // Contents that can be read without asking for permission are prefetched in the order
+        // displayed in the Spinner, and so is the first page of images (if already allowed).
+        // The first one is read right now, as it is displayed at startup
+        prefetcher = new Prefetcher(
+                new StorageIO(1, 1, Process.THREAD_PRIORITY_LOWEST, metrics),
+                new StorageIO[]{storageIO, thumbnailIO, bulkIO},
+                Utils.PREFETCH_TIME_BUDGET, Utils.PREFETCH_MAX_CHARS);
+        for (StorageBackend backend : backends) {
+            if (backend instanceof ResourceBackend || (backend instanceof FileBackend
+                    && backend.getPermission(false) == null)) {
+                final Prefetcher.Source<String> source = new Prefetcher.TextSource(backend);
+                prefetchedText.put(backend, source);
+                prefetcher.add(source);
+            } else if (backend == mediaBackend) {
+                final String permission = backend.getPermission(false);
+                if (permission == null || PackageManager.PERMISSION_GRANTED
+                        == ContextCompat.checkSelfPermission(application, permission)) {
+                    prefetcher.add(adapter.getFirstPage());
+                }
+            }
+        }
+        prefetcher.start();
+    }
+
+    // Attaches the activity displaying the state, which receives the results
+    // of the operations finished while it was being created
+    void attach(MainActivity activity) {
+        this.activity = activity;
+        while (!undelivered.isEmpty() && this.activity == activity) {
+            undelivered.poll().run(activity);
+        }
+    }
+
+    // Detaches the activity being destroyed. If it is being recreated, it hands over
+    // the EditText contents, so they are not read again
+    void detach(Editable text) {
+        activity = null;
+        this.text = text;
+    }
+
+    // Executes the action on the main thread in the activity attached,
+    // or once attached if it is being recreated (it can be called from any thread)
+    void post(Action action) {
+        storageIO.post(() -> run(action));
+    }
+
+    private void run(Action action) {
+        if (activity != null) {
+            action.run(activity);
+        } else {
+            undelivered.add(action);
+        }
+    }
+
+    // Gets a callback that delivers the result of the operation (or its error)
+    // to the activity attached when it finishes
+    <T> StorageIO.Callback<T> callback(Delivery<T> onSuccess, Delivery<Exception> onError) {
+        return new StorageIO.Callback<T>() {
+            @Override
+            public void onSuccess(T result) {
+                run(attached -> onSuccess.deliver(attached, result));
+            }
+
+            @Override
+            public void onError(Exception e) {
+                run(attached -> onError.deliver(attached, e));
+            }
+        };
+    }
+
+    // Exports the given number of copies of the image in raw resources to public media storage
+    // on a background thread. It keeps no reference to the activity, as it may outlive it
+    Future<MediaExporter.Result> exportImages(
+            int count, StorageIO.Callback<MediaExporter.Result> callback) {
+        final SimpleDateFormat dateFormat = new SimpleDateFormat(Utils.DATE_TIME_FORMAT, Locale.US);
+        // Format the current time as desired
+        final String timestamp = dateFormat.format(new Date());
+        final ExportedImage image = new ExportedImage(getApplication().getResources(), bitmapPool);
+
+        return bulkIO.submit(mediaBackend.getName() + MediaStoreBackend.EXPORT, () -> {
+            try {
+                return mediaBackend.export(new MediaExporter.Source() {
+                    @Override
+                    public Bitmap getBitmap(int index) throws IOException {
+                        // The image is decoded from raw resources only once per export
+                        return image.get();
+                    }
+
+                    @Override
+                    public String getName(int index) {
+                        // Set the file name
+                        return count == 1 ?
+                                "andy" + timestamp + ".png" :
+                                "andy" + timestamp + "_" + index + ".png";
+                    }
+                }, count);
+            } finally {
+                // The image can be reused by the next export
+                image.release();
+            }
+        }, callback);
+    }
+
+    // Image to be exported, decoded from raw resources into a bitmap of the pool the first time
+    // it is required, and returned to the pool once the export finishes
+    // (executed on background threads)
+    private static class ExportedImage {
+
+        private final Resources resources;
+        private final BitmapPool pool;
+        private Bitmap bitmap;
+
+        ExportedImage(Resources resources, BitmapPool pool) {
+            this.resources = resources;
+            this.pool = pool;
+        }
+
+        synchronized Bitmap get() throws IOException {
+            if (bitmap == null) {
+                // Get only the dimensions of the image, to find a bitmap large enough
+                final BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inJustDecodeBounds = true;
+                decode(options);
+                bitmap = pool.decode(options, this::decode);
+            }
+            return bitmap;
+        }
+
+        synchronized void release() {
+            pool.put(bitmap);
+            bitmap = null;
+        }
+
+        // Decodes the image to be exported from raw resources
+        private Bitmap decode(BitmapFactory.Options options) throws IOException {
+            final InputStream is = resources.openRawResource(R.raw.andy);
+            try {
+                return BitmapFactory.decodeStream(is, null, options);
+            } finally {
+                is.close();
+            }
+        }
+    }
+
+    // Cancels the read operation in progress (if any), so its contents are never displayed
+    void cancelPendingRead() {
+        if (pendingRead != null) {
+            pendingRead.cancel(true);
+            pendingRead = null;
+        }
+        // Discard any page already read but not displayed yet
+        loadGeneration++;
+        // Contents being prefetched are no longer required
+        prefetcher.release();
+    }
+
+    // The activity has finished for good
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        undelivered.clear();
+        // Reads are no longer required, but pending writes are completed before releasing threads
+        cancelPendingRead();
+        lineAdapter.close();
+        // Transfers will be resumed from the bytes already transferred
+        if (pendingTransfer != null) {
+            pendingTransfer.cancel(true);
+        }
+        if (pendingImport != null) {
+            pendingImport.cancel(true);
+        }
+        // Stop observing changes in the MediaStore
+        adapter.clear();
+        storageIO.shutdown();
+        bulkIO.shutdown();
+        // Images not decoded yet are no longer required
+        thumbnailIO.shutdownNow();
+        prefetcher.shutdown();
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+
+// Encodes text as UTF-8 without copying it as a whole: chars are taken from the CharSequence
+// a chunk at a time and encoded into a buffer of bytes that is streamed to the destination.
+// Each thread reuses its own coders and buffers (see TextStreamLoader for the decoding side).
+// Malformed text (e.g., half a surrogate pair) is replaced, as Writers and Readers do
+public class TextCodec {
+
+    // Number of bytes encoded or decoded at once
+    public static final int BUFFER_SIZE = 16 * 1024;
+
+    // Coders and buffers reused by each thread
+    private static final ThreadLocal<Coders> CODERS = new ThreadLocal<Coders>() {
+        @Override
+        protected Coders initialValue() {
+            return new Coders();
+        }
+    };
+
+    private TextCodec() {
+    }
+
+    // Text whose chars can be copied in bulk (e.g., a snapshot of an EditText),
+    // so they are not taken one at a time when encoded or hashed
+    public interface BulkChars extends CharSequence {
+        void getChars(int start, int end, char[] dest, int offset);
+    }
+
+    // Coders and buffers for a single encode or decode operation at a time
+    static class Coders {
+        final CharsetEncoder encoder = TextStreamLoader.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        final CharsetDecoder decoder = TextStreamLoader.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        final CharBuffer chars = CharBuffer.allocate(TextStreamLoader.CHUNK_SIZE);
+        final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+        // Builder reused for the pages delivered by TextStreamLoader
+        final StringBuilder page = new StringBuilder(TextStreamLoader.PAGE_SIZE);
+        private boolean busy;
+    }
+
+    // Gets the coders of the current thread, or new ones if they are already in use
+    // (e.g., a consumer of pages encoding text), which must be released once finished
+    static Coders acquire() {
+        final Coders coders = CODERS.get();
+        if (coders.busy) {
+            return new Coders();
+        }
+        coders.busy = true;
+        return coders;
+    }
+
+    static void release(Coders coders) {
+        coders.busy = false;
+    }
+
+    // Writes the UTF-8 encoded text to the stream (which is not closed),
+    // and returns the number of bytes written
+    public static long encode(CharSequence text, OutputStream os) throws IOException {
+        return encode(text, 0, text.length(), os);
+    }
+
+    // Writes the chars between start (inclusive) and end (exclusive) of the text,
+    // UTF-8 encoded, to the stream (which is not closed), and returns the number of bytes written
+    public static long encode(CharSequence text, int start, int end, OutputStream os)
+            throws IOException {
+        final Coders coders = acquire();
+        try {
+            final Encoding encoding = new Encoding(coders, text, start, end);
+            long written = 0;
+            while (encoding.next()) {
+                os.write(coders.bytes.array(), 0, coders.bytes.limit());
+                written += coders.bytes.limit();
+            }
+            return written;
+        } finally {
+            release(coders);
+        }
+    }
+
+    // Gets a stream that delivers the text UTF-8 encoded as it is read,
+    // instead of encoding it as a whole beforehand
+    public static InputStream newInputStream(CharSequence text) {
+        return new EncodingInputStream(text, null);
+    }
+
+    // Gets a stream that delivers the chars read from the Reader UTF-8 encoded,
+    // so the text is never held as a whole. The Reader is closed along with the stream
+    public static InputStream newInputStream(Reader reader) {
+        return new EncodingInputStream(null, reader);
+    }
+
+    // Gets the number of bytes of the UTF-8 encoded text, without encoding it
+    public static long encodedLength(CharSequence text) {
+        return encodedLength(text, 0, text.length());
+    }
+
+    // Gets the number of bytes of the chars between start (inclusive) and end (exclusive)
+    // of the text, UTF-8 encoded, without encoding them
+    public static long encodedLength(CharSequence text, int start, int end) {
+        long bytes = 0;
+        for (int i = start; i < end; i++) {
+            final char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c)
+                    && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                // Half a surrogate pair is replaced by the single byte '?'
+                bytes++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    // Encodes a range of a text (or the chars read from a Reader) into the buffer of bytes,
+    // a buffer at a time
+    private static class Encoding {
+
+        private final CharsetEncoder encoder;
+        private final CharBuffer chars;
+        private final ByteBuffer bytes;
+        private final CharSequence text;
+        private final Reader reader;
+        private final int end;
+        // Position of the next char to be copied from the text
+        private int position;
+        // Whether all the chars have been copied
+        private boolean copied;
+        private boolean finished;
+
+        Encoding(Coders coders, CharSequence text, int start, int end) {
+            this(coders, text, null, start, end);
+        }
+
+        Encoding(Coders coders, Reader reader) {
+            this(coders, null, reader, 0, 0);
+        }
+
+        private Encoding(Coders coders, CharSequence text, Reader reader, int start, int end) {
+            this.encoder = coders.encoder;
+            this.chars = coders.chars;
+            this.bytes = coders.bytes;
+            this.text = text;
+            this.reader = reader;
+            this.position = start;
+            this.end = end;
+            encoder.reset();
+            // No chars copied yet
+            chars.clear();
+            chars.flip();
+        }
+
+        // Fills the buffer of bytes (ready to be read) with the next encoded bytes,
+        // and returns whether there were any left
+        boolean next() throws IOException {
+            bytes.clear();
+            while (!finished) {
+                // Copy the next chunk of chars once the previous one has been encoded
+                // (except half a surrogate pair, kept until the other half is copied)
+                if (chars.remaining() <= 1 && !copied) {
+                    chars.compact();
+                    if (reader != null) {
+                        final int read = reader.read(chars.array(), chars.position(),
+                                chars.remaining());
+                        if (read == -1) {
+                            copied = true;
+                        } else {
+                            chars.position(chars.position() + read);
+                        }
+                    } else {
+                        final int count = Math.min(chars.remaining(), end - position);
+                        getChars(text, position, position + count,
+                                chars.array(), chars.position());
+                        chars.position(chars.position() + count);
+                        position += count;
+                        copied = position == end;
+                    }
+                    chars.flip();
+                }
+                final boolean last = copied;
+                if (encoder.encode(chars, bytes, last).isOverflow()) {
+                    break;
+                }
+                if (last) {
+                    if (encoder.flush(bytes).isOverflow()) {
+                        break;
+                    }
+                    finished = true;
+                }
+            }
+            bytes.flip();
+            return bytes.hasRemaining();
+        }
+    }
+
+    // Copies the chars of the text into the array, in bulk if possible
+    static void getChars(CharSequence text, int start, int end, char[] dest, int offset) {
+        if (text instanceof String) {
+            ((String) text).getChars(start, end, dest, offset);
+        } else if (text instanceof StringBuilder) {
+            ((StringBuilder) text).getChars(start, end, dest, offset);
+        } else if (text instanceof BulkChars) {
+            ((BulkChars) text).getChars(start, end, dest, offset);
+        } else if (text instanceof CharBuffer && ((CharBuffer) text).hasArray()) {
+            final CharBuffer buffer = (CharBuffer) text;
+            System.arraycopy(buffer.array(), buffer.arrayOffset() + buffer.position() + start,
+                    dest, offset, end - start);
+        } else {
+            for (int i = start; i < end; i++) {
+                dest[offset++] = text.charAt(i);
+            }
+        }
+    }
+
+    // Stream encoding the text (or the chars read from a Reader) as its bytes are read,
+    // through its own coders and buffers
+    private static class EncodingInputStream extends InputStream {
+
+        private final Coders coders = new Coders();
+        private final Encoding encoding;
+        private final Reader reader;
+        // Whether the buffer of bytes holds encoded bytes
+        private boolean encoded;
+
+        EncodingInputStream(CharSequence text, Reader reader) {
+            this.reader = reader;
+            encoding = reader != null
+                    ? new Encoding(coders, reader)
+                    : new Encoding(coders, text, 0, text.length());
+        }
+
+        // Encodes the next bytes once the previous ones have been read,
+        // and returns whether there are any left
+        private boolean fill() throws IOException {
+            if (!encoded || !coders.bytes.hasRemaining()) {
+                encoded = encoding.next();
+            }
+            return encoded;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? coders.bytes.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            if (count == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            final int read = Math.min(count, coders.bytes.remaining());
+            coders.bytes.get(buffer, offset, read);
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return encoded ? coders.bytes.remaining() : 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (reader != null) {
+                reader.close();
+            }
+        }
+    }
+}
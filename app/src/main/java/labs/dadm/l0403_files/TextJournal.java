@@ -0,0 +1,597 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// Saves a text file as a base file plus a journal of edits, so the cost of each save
+// depends on the size of the edit instead of on the size of the whole text.
+// The journal starts with a header identifying the base file it applies to, followed by
+// records with the following format:
+// [payload length (int)][CRC32 of the payload (int)][payload]
+// where the payload is:
+// [offset of the edit (int, chars)][chars deleted (int)][length of the text after the edit
+// (int, chars)][length of the text after the edit (long, UTF-8 bytes)][chars inserted (UTF-8)]
+// The lengths tell the size of the text without replaying the edits (version 1 records
+// lack them, so those journals are compacted on the next save). The text is replayed
+// as it is read: the edits are applied to a list of pieces (ranges of the base file or
+// inserted chars), and the base file is streamed through them instead of loaded as a whole.
+// Incomplete or corrupted records (e.g., due to a crash) are discarded when loading.
+// Once the journal grows too much compared to the base file, both are compacted
+// into a new base file and an empty journal
+public class TextJournal {
+
+    // Values identifying the format of the journal
+    private static final int MAGIC = 0x4A524E4C;
+    private static final int VERSION = 2;
+    // Previous version of the journal, whose records do not include the length of the text
+    private static final int LEGACY_VERSION = 1;
+    // Bytes of the header: magic, version, length and CRC32 of the base file
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8;
+    // Bytes preceding the payload of each record: length and CRC32
+    private static final int RECORD_HEADER_SIZE = 4 + 4;
+    // Bytes preceding the inserted chars in the payload: offset, chars deleted,
+    // and length of the text in chars and bytes
+    private static final int EDIT_HEADER_SIZE = 4 + 4 + 4 + 8;
+    private static final int LEGACY_EDIT_HEADER_SIZE = 4 + 4;
+    // End of a range of the base file extending up to its end (unknown for version 1)
+    private static final long UNBOUNDED = Long.MAX_VALUE;
+
+    private final File base;
+    private final File journal;
+    private final AtomicFileWriter writer;
+    // Size of the journal compared to the base file that triggers the compaction
+    private final double compactionRatio;
+    // Minimum size of the journal (in bytes) to be compacted
+    private final long compactionMinBytes;
+
+    // Text as last saved, which does not change (null until loaded)
+    private CharSequence content;
+    // Number of bytes of the UTF-8 encoded content
+    private long contentBytes;
+    // Edits read from the journal while the text is not loaded (null until read)
+    private Replay replay;
+    // Whether the base file is compressed when compacted
+    private volatile boolean compressed;
+
+    public TextJournal(File base, AtomicFileWriter writer,
+                       double compactionRatio, long compactionMinBytes) {
+        this.base = base;
+        this.journal = new File(base.getPath() + ".journal");
+        this.writer = writer;
+        this.compactionRatio = compactionRatio;
+        this.compactionMinBytes = compactionMinBytes;
+    }
+
+    public void setCompressed(boolean compressed) {
+        this.compressed = compressed;
+    }
+
+    // Whether there are edits not compacted into the base file yet
+    public synchronized boolean hasEdits() {
+        return journal.length() > HEADER_SIZE;
+    }
+
+    // Size (in bytes) of the journal
+    public synchronized long length() {
+        return journal.length();
+    }
+
+    // Time of the last edit appended to the journal (0 if there are none)
+    public synchronized long lastModified() {
+        return journal.lastModified();
+    }
+
+    // Delivers the text to the consumer page by page: the text last saved if loaded,
+    // the edits applied as the base file is streamed, or the base file if there are no edits
+    // (executed on a background thread)
+    public long load(TextStreamLoader.PageConsumer consumer) throws IOException {
+        final CharSequence text;
+        final Reader reader;
+        synchronized (this) {
+            // The base file is opened before a compaction can replace it
+            text = content;
+            final Replay edits = text == null && hasEdits() ? readJournal() : null;
+            reader = edits != null ? openReader(edits) : null;
+        }
+        if (text != null) {
+            return TextStreamLoader.load(text, consumer);
+        } else if (reader != null) {
+            return TextStreamLoader.load(reader, consumer);
+        }
+        return TextStreamLoader.load(base, consumer);
+    }
+
+    // Opens a stream delivering the text UTF-8 encoded as the edits are applied,
+    // or returns null if there are no edits (executed on a background thread)
+    public synchronized InputStream openInputStream() throws IOException {
+        if (!hasEdits()) {
+            return null;
+        } else if (content != null) {
+            return TextCodec.newInputStream(content);
+        }
+        final Replay edits = readJournal();
+        return edits != null ? TextCodec.newInputStream(openReader(edits)) : null;
+    }
+
+    // Gets the number of bytes of the UTF-8 encoded text, or -1 if there are no edits.
+    // It is taken from the last record, so the edits are not replayed
+    // (executed on a background thread)
+    public synchronized long encodedLength() throws IOException {
+        if (!hasEdits()) {
+            return -1;
+        } else if (content != null) {
+            return contentBytes;
+        }
+        final Replay edits = readJournal();
+        if (edits == null) {
+            return -1;
+        }
+        if (edits.bytes == -1) {
+            // Records of version 1 do not keep the length, so the text is encoded
+            // as it is replayed (only once, as the edits are kept)
+            final InputStream is = TextCodec.newInputStream(openReader(edits));
+            try {
+                final byte[] buffer = new byte[TextCodec.BUFFER_SIZE];
+                long bytes = 0;
+                int read;
+                while ((read = is.read(buffer)) != -1) {
+                    bytes += read;
+                }
+                edits.bytes = bytes;
+            } finally {
+                is.close();
+            }
+        }
+        return edits.bytes;
+    }
+
+    // Reads the edits in the journal, discarding any incomplete or corrupted record at the end.
+    // Returns null if there are none, or if the journal does not apply to the current base file
+    // (then it is deleted). The edits are kept until the text is saved or reset
+    private Replay readJournal() throws IOException {
+        if (replay != null) {
+            return replay;
+        }
+        if (journal.length() < HEADER_SIZE) {
+            return null;
+        }
+        final ByteBuffer records = ByteBuffer.wrap(readFully(journal));
+        final int magic = records.getInt();
+        final int version = records.getInt();
+        final long baseLength = records.getLong();
+        final long baseChecksum = records.getLong();
+
+        // The journal applies only to the base file it was created for
+        // (otherwise, it was already compacted into the current one)
+        if (magic != MAGIC || (version != VERSION && version != LEGACY_VERSION)
+                || baseLength != base.length() || baseChecksum != checksumBase()) {
+            journal.delete();
+            return null;
+        }
+
+        final boolean legacy = version == LEGACY_VERSION;
+        final Replay edits = new Replay(legacy);
+        final long valid = readRecords(records, edits);
+        // Discard any incomplete or corrupted record at the end
+        if (valid < journal.length()) {
+            truncate(valid);
+        }
+        if (valid == HEADER_SIZE) {
+            return null;
+        }
+        replay = edits;
+        return edits;
+    }
+
+    // Applies the valid records to the pieces of the text, and returns the position
+    // after the last one
+    private static long readRecords(ByteBuffer records, Replay edits) {
+        final int editHeaderSize = edits.legacy ? LEGACY_EDIT_HEADER_SIZE : EDIT_HEADER_SIZE;
+        final CRC32 crc = new CRC32();
+        // Length of the text (in chars) before each edit
+        long chars = -1;
+        while (records.remaining() >= RECORD_HEADER_SIZE) {
+            final int start = records.position();
+            final int length = records.getInt();
+            final int checksum = records.getInt();
+            if (length < editHeaderSize || length > records.remaining()) {
+                return start;
+            }
+            crc.reset();
+            crc.update(records.array(), records.position(), length);
+            if ((int) crc.getValue() != checksum) {
+                return start;
+            }
+
+            final int offset = records.getInt();
+            final int deleted = records.getInt();
+            final int charsAfter = edits.legacy ? -1 : records.getInt();
+            final long bytesAfter = edits.legacy ? -1 : records.getLong();
+            final int insertedBytes = length - editHeaderSize;
+            final String inserted = new String(records.array(), records.position(),
+                    insertedBytes, TextStreamLoader.UTF_8);
+            records.position(records.position() + insertedBytes);
+
+            if (chars == -1) {
+                // The first edit tells the length of the base file
+                // (up to its end, whatever it is, for version 1)
+                chars = edits.legacy
+                        ? UNBOUNDED : (long) charsAfter - inserted.length() + deleted;
+                if (chars > 0) {
+                    edits.pieces.add(new Piece(0, chars));
+                }
+            }
+            if (offset < 0 || deleted < 0 || (long) offset + deleted > chars
+                    || (!edits.legacy && (charsAfter != chars - deleted + inserted.length()
+                    || bytesAfter < 0))
+                    || !apply(edits.pieces, offset, deleted, inserted)) {
+                return start;
+            }
+            if (!edits.legacy) {
+                chars = charsAfter;
+                edits.bytes = bytesAfter;
+            }
+        }
+        return records.position();
+    }
+
+    // Replaces the chars deleted by the edit with those inserted,
+    // and returns whether the edit applies to the text
+    private static boolean apply(List<Piece> pieces, int offset, int deleted, String inserted) {
+        final int first = split(pieces, offset);
+        final int last = first == -1 ? -1 : split(pieces, (long) offset + deleted);
+        if (last == -1) {
+            return false;
+        }
+        pieces.subList(first, last).clear();
+        if (!inserted.isEmpty()) {
+            pieces.add(first, new Piece(inserted));
+        }
+        return true;
+    }
+
+    // Splits the piece containing the position, so that a piece starts there,
+    // and returns its index (-1 if the position is beyond the end of the text)
+    private static int split(List<Piece> pieces, long position) {
+        for (int i = 0; i < pieces.size(); i++) {
+            if (position == 0) {
+                return i;
+            }
+            final Piece piece = pieces.get(i);
+            final long length = piece.length();
+            if (position < length) {
+                if (piece.inserted != null) {
+                    pieces.set(i, new Piece(piece.inserted.substring(0, (int) position)));
+                    pieces.add(i + 1, new Piece(piece.inserted.substring((int) position)));
+                } else {
+                    pieces.set(i, new Piece(piece.start, piece.start + position));
+                    pieces.add(i + 1, new Piece(piece.start + position, piece.end));
+                }
+                return i + 1;
+            }
+            position -= length;
+        }
+        return position == 0 ? pieces.size() : -1;
+    }
+
+    // Opens a Reader delivering the text as the edits are applied to the base file
+    // (it may not exist if everything is in the journal)
+    private Reader openReader(Replay edits) throws IOException {
+        final Reader reader = base.exists()
+                ? new InputStreamReader(CompressedBlockFormat.decompressIfNeeded(
+                new FileInputStream(base)), TextStreamLoader.UTF_8)
+                : null;
+        return new ReplayReader(reader, edits.pieces);
+    }
+
+    // Loads the text last saved, as new edits are found by comparing it with the new text.
+    // Journals of version 1 are compacted, so new records are appended to one of version 2
+    private void loadContent() throws IOException {
+        final Replay edits = hasEdits() ? readJournal() : null;
+        final StringBuilder text = new StringBuilder();
+        if (edits != null) {
+            TextStreamLoader.load(openReader(edits), text::append);
+        } else if (base.exists()) {
+            TextStreamLoader.load(base, text::append);
+        }
+        content = text.toString();
+        contentBytes = edits != null && edits.bytes != -1
+                ? edits.bytes : TextCodec.encodedLength(content);
+        // The edits are not required anymore, as the text is kept
+        replay = null;
+        if (edits != null && edits.legacy) {
+            writer.write(base, content, AtomicFileWriter.DURABILITY_SYNC, compressed);
+            journal.delete();
+        }
+    }
+
+    // Appends the differences between the text last saved and the new one to the journal.
+    // Returns whether the journal should be compacted (executed on a background thread)
+    public synchronized boolean save(CharSequence text, int durability) throws IOException {
+        if (content == null) {
+            loadContent();
+        }
+
+        // Find the only region that differs between both texts
+        final int oldLength = content.length();
+        final int newLength = text.length();
+        int prefix = 0;
+        while (prefix < oldLength && prefix < newLength
+                && content.charAt(prefix) == text.charAt(prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < oldLength - prefix && suffix < newLength - prefix
+                && content.charAt(oldLength - 1 - suffix) == text.charAt(newLength - 1 - suffix)) {
+            suffix++;
+        }
+        if (prefix == oldLength && prefix == newLength) {
+            // Nothing has changed
+            return false;
+        }
+        // Do not split surrogate pairs, as they could not be encoded
+        if (prefix > 0 && Character.isHighSurrogate(text.charAt(prefix - 1))) {
+            prefix--;
+        }
+        if (suffix > 0 && Character.isLowSurrogate(text.charAt(newLength - suffix))) {
+            suffix--;
+        }
+
+        // Create the record for the edit, keeping the length of the resulting text
+        final long bytesAfter = contentBytes
+                - TextCodec.encodedLength(content, prefix, oldLength - suffix)
+                + TextCodec.encodedLength(text, prefix, newLength - suffix);
+        final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        final DataOutputStream data = new DataOutputStream(payload);
+        data.writeInt(prefix);
+        data.writeInt(oldLength - prefix - suffix);
+        data.writeInt(newLength);
+        data.writeLong(bytesAfter);
+        TextCodec.encode(text, prefix, newLength - suffix, data);
+        final byte[] bytes = payload.toByteArray();
+        final CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+
+        final ByteArrayOutputStream record = new ByteArrayOutputStream();
+        final DataOutputStream recordData = new DataOutputStream(record);
+        // A new journal starts with the header identifying its base file
+        // (any incomplete header, or one without records, is discarded)
+        if (!hasEdits()) {
+            journal.delete();
+            writeHeader(recordData);
+        }
+        recordData.writeInt(bytes.length);
+        recordData.writeInt((int) crc.getValue());
+        recordData.write(bytes);
+
+        // Append the record to the journal
+        final FileOutputStream fos = new FileOutputStream(journal, true);
+        try {
+            record.writeTo(fos);
+            if (durability == AtomicFileWriter.DURABILITY_SYNC) {
+                fos.getFD().sync();
+            }
+        } finally {
+            fos.close();
+        }
+        if (durability == AtomicFileWriter.DURABILITY_GROUP_APPENDS) {
+            writer.scheduleCommit(journal);
+        }
+
+        // The text is kept without copying it (see StorageBackend.write)
+        content = text;
+        contentBytes = bytesAfter;
+        return journal.length() > Math.max(compactionMinBytes,
+                (long) (base.length() * compactionRatio));
+    }
+
+    // Writes the header identifying the current base file
+    private void writeHeader(DataOutputStream data) throws IOException {
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeLong(base.length());
+        data.writeLong(checksumBase());
+    }
+
+    // Gets the CRC32 of the base file (0 if it does not exist), streaming its bytes
+    private long checksumBase() throws IOException {
+        final CRC32 crc = new CRC32();
+        if (base.exists()) {
+            final byte[] buffer = new byte[TextStreamLoader.CHUNK_SIZE];
+            final FileInputStream fis = new FileInputStream(base);
+            try {
+                int read;
+                while ((read = fis.read(buffer)) != -1) {
+                    crc.update(buffer, 0, read);
+                }
+            } finally {
+                fis.close();
+            }
+        }
+        return crc.getValue();
+    }
+
+    // Writes the text last saved as the new base file and empties the journal
+    // (executed on a background thread)
+    public synchronized void compact() throws IOException {
+        if (content == null || !hasEdits()) {
+            return;
+        }
+        // If the app crashes before deleting the journal, its header will not match
+        // the new base file, so it will be discarded
+        writer.write(base, content, AtomicFileWriter.DURABILITY_SYNC, compressed);
+        journal.delete();
+    }
+
+    // Forgets the text last saved and the journal, as the base file has been replaced
+    // by other means (executed on a background thread)
+    public synchronized void reset() {
+        content = null;
+        replay = null;
+        journal.delete();
+    }
+
+    // Discards the contents of the journal after the given position
+    private void truncate(long length) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(journal, "rw");
+        try {
+            raf.setLength(length);
+        } finally {
+            raf.close();
+        }
+    }
+
+    // Reads all the bytes of the file
+    private static byte[] readFully(File file) throws IOException {
+        final FileInputStream fis = new FileInputStream(file);
+        try {
+            final byte[] bytes = new byte[(int) file.length()];
+            int offset = 0;
+            int read;
+            while (offset < bytes.length
+                    && (read = fis.read(bytes, offset, bytes.length - offset)) != -1) {
+                offset += read;
+            }
+            return offset == bytes.length ? bytes : Arrays.copyOf(bytes, offset);
+        } finally {
+            fis.close();
+        }
+    }
+
+    // Range of the text, taken either from the base file or from the chars inserted by an edit
+    private static class Piece {
+
+        // Range of chars of the base file (end is UNBOUNDED if up to its end)
+        final long start;
+        final long end;
+        // Chars inserted by an edit (null for ranges of the base file)
+        final String inserted;
+
+        Piece(long start, long end) {
+            this.start = start;
+            this.end = end;
+            this.inserted = null;
+        }
+
+        Piece(String inserted) {
+            this.start = 0;
+            this.end = 0;
+            this.inserted = inserted;
+        }
+
+        long length() {
+            return inserted != null ? inserted.length() : end - start;
+        }
+    }
+
+    // Edits read from the journal, as the pieces making up the text
+    private static class Replay {
+
+        final List<Piece> pieces = new ArrayList<>();
+        // Whether the records are of version 1
+        final boolean legacy;
+        // Number of bytes of the UTF-8 encoded text (-1 if unknown, for version 1)
+        long bytes = -1;
+
+        Replay(boolean legacy) {
+            this.legacy = legacy;
+        }
+    }
+
+    // Reader delivering the pieces of the text in order, so the ranges of the base file
+    // are read (and those deleted skipped) as the text is read
+    private static class ReplayReader extends Reader {
+
+        // Chars of the base file (null if it does not exist)
+        private final Reader base;
+        private final List<Piece> pieces;
+        // Piece being read, and chars of it already delivered
+        private int index;
+        private long delivered;
+        // Chars of the base file already read or skipped
+        private long position;
+
+        ReplayReader(Reader base, List<Piece> pieces) {
+            this.base = base;
+            this.pieces = pieces;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int count) throws IOException {
+            int read = 0;
+            while (read < count && index < pieces.size()) {
+                final Piece piece = pieces.get(index);
+                final int length = (int) Math.min(count - read, piece.length() - delivered);
+                if (piece.inserted != null) {
+                    piece.inserted.getChars((int) delivered, (int) delivered + length,
+                            buffer, offset + read);
+                    read += length;
+                    delivered += length;
+                } else {
+                    final int copied = readBase(piece.start + delivered,
+                            buffer, offset + read, length);
+                    if (copied == -1) {
+                        // Only ranges up to the end of the base file can end before expected
+                        if (piece.end != UNBOUNDED) {
+                            throw new IOException("The base file is shorter than the journal");
+                        }
+                        delivered = piece.length();
+                    } else {
+                        read += copied;
+                        delivered += copied;
+                    }
+                }
+                if (delivered == piece.length()) {
+                    index++;
+                    delivered = 0;
+                }
+            }
+            return read == 0 && count > 0 ? -1 : read;
+        }
+
+        // Reads the chars of the base file from the given position, skipping any chars deleted
+        // before, and returns the number of chars read (-1 once the base file is finished)
+        private int readBase(long start, char[] buffer, int offset, int count)
+                throws IOException {
+            if (base == null) {
+                return -1;
+            }
+            while (position < start) {
+                final long skipped = base.skip(start - position);
+                if (skipped == 0) {
+                    return -1;
+                }
+                position += skipped;
+            }
+            final int read = base.read(buffer, offset, count);
+            if (read > 0) {
+                position += read;
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (base != null) {
+                base.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files;
+
+import android.text.Editable;
+import android.text.TextUtils;
+import android.text.TextWatcher;
+import android.view.View;
+import android.widget.EditText;
+
+// Contents of an EditText at a given time, taken on the main thread without copying them.
+// The chars are read from the Editable itself (in bulk, see TextCodec.BulkChars) until the
+// Editable is about to change: the user (or the app) modifies it, or the EditText is detached
+// (e.g., the activity is destroyed). Only then are they copied, once and on the main thread.
+// So the snapshot can be written, indexed and kept as the last version saved without ever
+// being copied as long as the contents are not edited
+public class TextSnapshot implements TextCodec.BulkChars, TextWatcher,
+        View.OnAttachStateChangeListener {
+
+    private final int length;
+    // EditText watched until the contents are copied (guarded by this)
+    private EditText editText;
+    // Editable until copied, then the String copied (guarded by this)
+    private CharSequence text;
+
+    private TextSnapshot(EditText editText) {
+        this.editText = editText;
+        this.text = editText.getText();
+        this.length = text.length();
+    }
+
+    // Takes a snapshot of the current contents of the EditText (on the main thread)
+    public static TextSnapshot of(EditText editText) {
+        final TextSnapshot snapshot = new TextSnapshot(editText);
+        editText.addTextChangedListener(snapshot);
+        editText.addOnAttachStateChangeListener(snapshot);
+        return snapshot;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public synchronized char charAt(int index) {
+        return text.charAt(index);
+    }
+
+    @Override
+    public synchronized void getChars(int start, int end, char[] dest, int offset) {
+        TextUtils.getChars(text, start, end, dest, offset);
+    }
+
+    @Override
+    public synchronized CharSequence subSequence(int start, int end) {
+        // Without the spans of the Editable
+        return TextUtils.substring(text, start, end);
+    }
+
+    // Gets the chars as a String, copying them from the Editable only the first time
+    @Override
+    public synchronized String toString() {
+        if (!(text instanceof String)) {
+            text = text.toString();
+            stopWatching();
+        }
+        return (String) text;
+    }
+
+    // Stops watching the EditText without copying its contents, as the snapshot will not be
+    // read anymore (e.g., it has been replaced by a newer one) (executed on the main thread)
+    public synchronized void discard() {
+        text = "";
+        stopWatching();
+    }
+
+    // Stops watching the EditText once the contents no longer depend on it, so the snapshot
+    // does not keep it (nor its activity). The watchers are removed on the main thread,
+    // but not while notifying them
+    private void stopWatching() {
+        final EditText watched = editText;
+        if (watched != null) {
+            editText = null;
+            watched.post(() -> {
+                watched.removeTextChangedListener(this);
+                watched.removeOnAttachStateChangeListener(this);
+            });
+        }
+    }
+
+    @Override
+    public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+        // Copy the chars before they are modified (if not already copied)
+        toString();
+    }
+
+    @Override
+    public void onTextChanged(CharSequence s, int start, int before, int count) {
+        // Do nothing
+    }
+
+    @Override
+    public void afterTextChanged(Editable s) {
+        // Do nothing
+    }
+
+    @Override
+    public void onViewAttachedToWindow(View v) {
+        // Do nothing
+    }
+
+    @Override
+    public void onViewDetachedFromWindow(View v) {
+        // The Editable keeps references to the EditText, so it is copied to be released
+        toString();
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+
+// Reads text in fixed-size chunks through a reusable buffer and delivers it in pages,
+// so large files can be displayed incrementally while keeping memory usage bounded.
+// UTF-8 bytes are decoded through the coders and buffers reused by each thread (see TextCodec)
+public class TextStreamLoader {
+
+    // Number of chars read from the source at once
+    public static final int CHUNK_SIZE = 8 * 1024;
+    // Number of chars delivered at once to the consumer
+    public static final int PAGE_SIZE = 64 * 1024;
+    // Files smaller than this (in bytes) are read through streams,
+    // as mapping them into memory costs more than what it saves
+    public static final long MAPPED_THRESHOLD = 256 * 1024;
+    // Maximum number of bytes of the file mapped into memory at once
+    public static final long MAPPED_WINDOW = 16 * 1024 * 1024;
+
+    // Charset used to encode text files
+    public static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Receives the pages of text as they are read
+    public interface PageConsumer {
+        void onPage(String page) throws InterruptedException;
+    }
+
+    // Any source of text able to deliver its contents page by page
+    public interface Source {
+        long load(PageConsumer consumer) throws IOException;
+    }
+
+    private TextStreamLoader() {
+    }
+
+    // Reads all the chars available from the Reader and delivers them to the consumer
+    // in pages of (at most) PAGE_SIZE chars. Line breaks are kept as found in the source.
+    // The Reader is closed once finished. Returns the total number of chars read
+    public static long load(Reader reader, PageConsumer consumer) throws IOException {
+
+        // Buffer reused for every read operation
+        final char[] chunk = new char[CHUNK_SIZE];
+        final Pages pages = new Pages(consumer);
+        int read;
+
+        try {
+            while ((read = reader.read(chunk)) != -1) {
+                pages.append(chunk, read);
+            }
+            return pages.finish();
+
+        } catch (InterruptedException e) {
+            // The consumer was interrupted while waiting, so the operation was cancelled
+            throw new InterruptedIOException();
+        } finally {
+            reader.close();
+        }
+    }
+
+    // Decodes all the UTF-8 bytes available from the stream and delivers the chars to the
+    // consumer in pages of (at most) PAGE_SIZE chars. The stream is closed once finished.
+    // Returns the total number of chars read
+    public static long load(InputStream is, PageConsumer consumer) throws IOException {
+
+        final TextCodec.Coders coders = TextCodec.acquire();
+        final CharsetDecoder decoder = coders.decoder;
+        final ByteBuffer bytes = coders.bytes;
+        final CharBuffer chunk = coders.chars;
+        final Pages pages = new Pages(consumer, coders.page);
+        decoder.reset();
+        bytes.clear();
+        chunk.clear();
+
+        try {
+            boolean last = false;
+            while (!last) {
+                // Read after the bytes of any char split between reads
+                final int read = is.read(bytes.array(), bytes.position(), bytes.remaining());
+                if (read == -1) {
+                    last = true;
+                } else {
+                    bytes.position(bytes.position() + read);
+                }
+                bytes.flip();
+                decode(decoder, bytes, chunk, last, pages);
+                bytes.compact();
+            }
+            return flush(decoder, chunk, pages);
+
+        } catch (InterruptedException e) {
+            // The consumer was interrupted while waiting, so the operation was cancelled
+            throw new InterruptedIOException();
+        } finally {
+            is.close();
+            TextCodec.release(coders);
+        }
+    }
+
+    // Delivers the text to the consumer in pages of (at most) PAGE_SIZE chars.
+    // Returns the total number of chars
+    public static long load(CharSequence text, PageConsumer consumer) throws IOException {
+        final int length = text.length();
+        try {
+            for (int start = 0; start < length; start += PAGE_SIZE) {
+                // Stop as soon as the operation is cancelled
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException();
+                }
+                final int end = Math.min(length, start + PAGE_SIZE);
+                consumer.onPage(text.subSequence(start, end).toString());
+            }
+            return length;
+
+        } catch (InterruptedException e) {
+            // The consumer was interrupted while waiting, so the operation was cancelled
+            throw new InterruptedIOException();
+        }
+    }
+
+    // Reads the UTF-8 text file and delivers its contents to the consumer in pages.
+    // Large files are mapped into memory and decoded straight from the mapped buffer,
+    // whereas small ones are read through streams. Compressed files are detected and
+    // decompressed block by block. Returns the total number of chars read
+    public static long load(File file, PageConsumer consumer) throws IOException {
+        if (CompressedBlockFormat.isCompressed(file)) {
+            return load(new CompressedBlockFormat.BlockInputStream(new FileInputStream(file)),
+                    consumer);
+        } else if (file.length() < MAPPED_THRESHOLD) {
+            return load(new FileInputStream(file), consumer);
+        } else {
+            return loadMapped(file, consumer);
+        }
+    }
+
+    // Maps the file into memory (in windows of MAPPED_WINDOW bytes) and decodes the UTF-8
+    // text straight from the mapped buffer into a reusable buffer of chars.
+    // Returns the total number of chars read
+    public static long loadMapped(File file, PageConsumer consumer) throws IOException {
+
+        // Malformed input is replaced, as the Readers do
+        final TextCodec.Coders coders = TextCodec.acquire();
+        final CharsetDecoder decoder = coders.decoder;
+        // Buffer reused for every decode operation
+        final CharBuffer chunk = coders.chars;
+        final Pages pages = new Pages(consumer, coders.page);
+        decoder.reset();
+        chunk.clear();
+
+        final FileInputStream fis = new FileInputStream(file);
+        try {
+            final FileChannel channel = fis.getChannel();
+            final long size = channel.size();
+            long position = 0;
+            boolean last = size == 0;
+
+            while (!last) {
+                // Map the next window of the file
+                final long length = Math.min(MAPPED_WINDOW, size - position);
+                final MappedByteBuffer window =
+                        channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                last = position + length == size;
+
+                // Decode the whole window
+                decode(decoder, window, chunk, last, pages);
+
+                // Bytes of a char split between windows are mapped again in the next one
+                position += window.position();
+            }
+
+            return flush(decoder, chunk, pages);
+
+        } catch (InterruptedException e) {
+            // The consumer was interrupted while waiting, so the operation was cancelled
+            throw new InterruptedIOException();
+        } finally {
+            // Closing the stream also closes the channel
+            fis.close();
+            TextCodec.release(coders);
+        }
+    }
+
+    // Decodes the available bytes, delivering the chars every time the chunk is full
+    // (the bytes of a char split at the end are kept in the buffer unless it is the last one)
+    private static void decode(CharsetDecoder decoder, ByteBuffer bytes, CharBuffer chunk,
+                               boolean last, Pages pages)
+            throws InterruptedException, InterruptedIOException {
+        CoderResult result;
+        do {
+            result = decoder.decode(bytes, chunk, last);
+            pages.append(chunk.array(), chunk.position());
+            chunk.clear();
+        } while (result.isOverflow());
+    }
+
+    // Gets any char still kept by the decoder, delivers the last page,
+    // and returns the total number of chars
+    private static long flush(CharsetDecoder decoder, CharBuffer chunk, Pages pages)
+            throws InterruptedException, InterruptedIOException {
+        while (decoder.flush(chunk).isOverflow()) {
+            pages.append(chunk.array(), chunk.position());
+            chunk.clear();
+        }
+        pages.append(chunk.array(), chunk.position());
+        chunk.clear();
+        return pages.finish();
+    }
+
+    // Groups the chars read into pages of PAGE_SIZE chars before delivering them
+    private static class Pages {
+
+        private final PageConsumer consumer;
+        // Builder reused for every page
+        private final StringBuilder page;
+        private long total;
+
+        Pages(PageConsumer consumer) {
+            this(consumer, new StringBuilder(PAGE_SIZE));
+        }
+
+        Pages(PageConsumer consumer, StringBuilder page) {
+            this.consumer = consumer;
+            this.page = page;
+            page.setLength(0);
+        }
+
+        // Fills the current page and delivers it once full
+        void append(char[] chars, int count) throws InterruptedException, InterruptedIOException {
+            // Stop reading as soon as the operation is cancelled
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException();
+            }
+            int offset = 0;
+            while (offset < count) {
+                final int length = Math.min(count - offset, PAGE_SIZE - page.length());
+                page.append(chars, offset, length);
+                offset += length;
+                if (page.length() == PAGE_SIZE) {
+                    consumer.onPage(page.toString());
+                    page.setLength(0);
+                }
+            }
+            total += count;
+        }
+
+        // Delivers the last (incomplete) page and returns the total number of chars
+        long finish() throws InterruptedException {
+            if (page.length() > 0) {
+                consumer.onPage(page.toString());
+                page.setLength(0);
+            }
+            return total;
+        }
+    }
+}
@@ -0,0 +1,552 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.provider.MediaStore;
+import android.text.TextUtils;
+import android.util.Log;
+import android.util.Size;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.Future;
+
+// Adapter that displays the images in the GridView, decoding them on background threads
+// at the size of the cell instead of at full resolution.
+// Rows are queried from the MediaStore one page at a time, as cells get close to the end
+// of the rows already loaded, and kept in plain arrays (no objects per row but the name).
+// Changes notified by the MediaStore are applied to the affected rows only.
+// Images are decoded into bitmaps of the pool, and cells release the image they display
+// once recycled, so it can return to the pool when no longer cached. From API 29 on,
+// thumbnails come from the system as immutable bitmaps, so only those read from the
+// disk cache are pooled
+public class ThumbnailAdapter extends BaseAdapter {
+
+    // Tag of the messages logged
+    private static final String TAG = "ThumbnailAdapter";
+
+    // Keys measuring the operations on public media storage
+    private static final String METRICS_QUERY = "media.query";
+    private static final String METRICS_SYNC = "media.sync";
+    private static final String METRICS_THUMBNAIL = "media.thumbnail";
+
+    private final StorageIO queryIO;
+    private final StorageIO storageIO;
+    private final ThumbnailCache cache;
+    private final BitmapPool pool;
+    private final ContentResolver resolver;
+    private final MediaStorePager pager;
+    // Size (in pixels) of the thumbnails
+    private final int size;
+
+    // Rows loaded so far
+    private long[] ids = new long[0];
+    private String[] names = new String[0];
+    private long[] dates = new long[0];
+    private int count;
+    // Whether all the rows have been already loaded
+    private boolean complete = true;
+    // Page being queried (if any)
+    private Future<MediaStorePager.Page> pendingPage;
+
+    // Latest version of the MediaStore table already processed
+    private long version;
+    // Identifiers of the rows notified as changed but not processed yet
+    private final HashSet<Long> changedIds = new HashSet<>();
+    // Whether changes not related to any specific row have been notified
+    private boolean changedAll;
+    // Changes being queried (if any)
+    private Future<MediaStorePager.Changes> pendingChanges;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable syncRunnable = this::sync;
+    // Gets notified of any change in the images of the MediaStore
+    private final ContentObserver observer = new ContentObserver(handler) {
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            requestSync(uri);
+        }
+    };
+    private boolean observing;
+    // First page of rows, which is always synchronized with the changes made
+    // since it was queried once displayed, so it never gets outdated
+    private final Prefetcher.Source<MediaStorePager.Page> firstPage =
+            new Prefetcher.Source<MediaStorePager.Page>() {
+                @Override
+                public String getName() {
+                    return METRICS_QUERY;
+                }
+
+                @Override
+                public long getVersion() {
+                    return 0;
+                }
+
+                @Override
+                public MediaStorePager.Page read(Prefetcher.Budget budget) throws IOException {
+                    budget.check(0);
+                    return pager.queryPage(true, null, 0, Utils.MEDIA_PAGE_SIZE);
+                }
+
+                @Override
+                public long sizeOf(MediaStorePager.Page page) {
+                    // Identifier and date of each row take as much as 8 chars
+                    long size = page.count * 8L;
+                    for (int i = 0; i < page.count; i++) {
+                        size += page.names[i] != null ? page.names[i].length() : 0;
+                    }
+                    return size;
+                }
+            };
+
+    // Views are inflated with the context of the GridView, so the adapter (and the rows loaded)
+    // can be kept while the activity is recreated
+    public ThumbnailAdapter(Context context, StorageIO queryIO,
+                            StorageIO storageIO, ThumbnailCache cache, BitmapPool pool) {
+        this.queryIO = queryIO;
+        this.storageIO = storageIO;
+        this.cache = cache;
+        this.pool = pool;
+        this.resolver = context.getContentResolver();
+        this.pager = new MediaStorePager(resolver);
+        this.size = context.getResources().getDimensionPixelSize(R.dimen.thumbnail_size);
+    }
+
+    // Discards the rows loaded and queries the first page again.
+    // From then on, changes in the MediaStore are applied as notified
+    public void reload() {
+        reload(null);
+    }
+
+    // Discards the rows loaded and displays the first page already queried (e.g., prefetched),
+    // applying the changes made since then, or queries it again if null.
+    // From then on, changes in the MediaStore are applied as notified
+    public void reload(MediaStorePager.Page first) {
+        clear();
+        if (first == null) {
+            complete = false;
+            loadNextPage();
+        } else {
+            version = first.version;
+            append(first);
+            complete = first.count < Utils.MEDIA_PAGE_SIZE;
+            notifyDataSetChanged();
+        }
+        resolver.registerContentObserver(
+                MediaStore.Images.Media.EXTERNAL_CONTENT_URI, true, observer);
+        observing = true;
+        if (first != null) {
+            requestSync(MediaStore.Images.Media.EXTERNAL_CONTENT_URI);
+        }
+    }
+
+    // Gets the first page of rows, so it can be prefetched before the images are displayed
+    public Prefetcher.Source<MediaStorePager.Page> getFirstPage() {
+        return firstPage;
+    }
+
+    // Discards the rows loaded, cancelling the queries in progress (if any)
+    // and ignoring changes in the MediaStore
+    public void clear() {
+        if (observing) {
+            resolver.unregisterContentObserver(observer);
+            observing = false;
+        }
+        handler.removeCallbacks(syncRunnable);
+        changedIds.clear();
+        changedAll = false;
+        if (pendingChanges != null) {
+            pendingChanges.cancel(true);
+            pendingChanges = null;
+        }
+        if (pendingPage != null) {
+            pendingPage.cancel(true);
+            pendingPage = null;
+        }
+        // Arrays are reused for the next rows, but names are released
+        Arrays.fill(names, 0, count, null);
+        count = 0;
+        complete = true;
+        notifyDataSetChanged();
+    }
+
+    // Queries the page following the last row loaded (if not already querying it)
+    private void loadNextPage() {
+        if (complete || pendingPage != null) {
+            return;
+        }
+        final boolean first = count == 0;
+        final String afterName = first ? null : names[count - 1];
+        final long afterId = first ? 0 : ids[count - 1];
+
+        pendingPage = queryIO.submit(METRICS_QUERY,
+                () -> pager.queryPage(first, afterName, afterId, Utils.MEDIA_PAGE_SIZE),
+                new StorageIO.Callback<MediaStorePager.Page>() {
+                    @Override
+                    public void onSuccess(MediaStorePager.Page result) {
+                        pendingPage = null;
+                        // Changes will be queried from the version of the first page on
+                        if (first) {
+                            version = result.version;
+                        }
+                        append(result);
+                        // A page not completely filled is the last one
+                        complete = result.count < Utils.MEDIA_PAGE_SIZE;
+                        notifyDataSetChanged();
+                    }
+
+                    @Override
+                    public void onError(Exception e) {
+                        pendingPage = null;
+                        complete = true;
+                        Log.e(TAG, "Cannot query the images", e);
+                    }
+                });
+    }
+
+    // Adds the rows of the page after the last row loaded
+    private void append(MediaStorePager.Page page) {
+        if (count + page.count > ids.length) {
+            final int capacity = Math.max(count + page.count, ids.length * 2);
+            ids = Arrays.copyOf(ids, capacity);
+            names = Arrays.copyOf(names, capacity);
+            dates = Arrays.copyOf(dates, capacity);
+        }
+        System.arraycopy(page.ids, 0, ids, count, page.count);
+        System.arraycopy(page.names, 0, names, count, page.count);
+        System.arraycopy(page.dates, 0, dates, count, page.count);
+        count += page.count;
+    }
+
+    // Schedules the processing of the change notified for the given URI.
+    // Close notifications are grouped and processed together
+    public void requestSync(Uri uri) {
+        if (!observing) {
+            return;
+        }
+        // Notifications for a specific row end with its identifier
+        long id = -1;
+        try {
+            id = ContentUris.parseId(uri);
+        } catch (NumberFormatException | UnsupportedOperationException e) {
+            // The notification is not related to a specific row
+        }
+        if (id < 0) {
+            changedAll = true;
+        } else {
+            changedIds.add(id);
+        }
+        handler.removeCallbacks(syncRunnable);
+        handler.postDelayed(syncRunnable, Utils.MEDIA_SYNC_DELAY);
+    }
+
+    // Queries the changes notified so far on a background thread
+    private void sync() {
+        // Wait for the rows to be loaded, or the previous changes to be processed
+        if (pendingPage != null || pendingChanges != null) {
+            handler.postDelayed(syncRunnable, Utils.MEDIA_SYNC_DELAY);
+            return;
+        }
+
+        // Check all the rows loaded, or just those notified
+        final boolean onlyIds = !changedAll;
+        final long[] checkIds;
+        if (onlyIds) {
+            checkIds = new long[changedIds.size()];
+            int i = 0;
+            for (Long id : changedIds) {
+                checkIds[i++] = id;
+            }
+        } else {
+            checkIds = Arrays.copyOf(ids, count);
+        }
+        final long since = version;
+        changedIds.clear();
+        changedAll = false;
+
+        pendingChanges = queryIO.submit(METRICS_SYNC,
+                () -> pager.queryChanges(since, checkIds, checkIds.length, onlyIds),
+                new StorageIO.Callback<MediaStorePager.Changes>() {
+                    @Override
+                    public void onSuccess(MediaStorePager.Changes result) {
+                        pendingChanges = null;
+                        apply(result);
+                    }
+
+                    @Override
+                    public void onError(Exception e) {
+                        pendingChanges = null;
+                        Log.e(TAG, "Cannot query the changes", e);
+                    }
+                });
+    }
+
+    // Updates the rows affected by the changes
+    private void apply(MediaStorePager.Changes changes) {
+        // Remove the rows deleted
+        for (int i = 0; i < changes.deletedCount; i++) {
+            final int position = indexOf(changes.deleted[i]);
+            if (position >= 0) {
+                remove(position);
+            }
+        }
+        // Update the rows modified, or insert them if new
+        final MediaStorePager.Page modified = changes.modified;
+        for (int i = 0; i < modified.count; i++) {
+            final int position = indexOf(modified.ids[i]);
+            if (position >= 0 && TextUtils.equals(names[position], modified.names[i])) {
+                // Its position does not change, so the new date is enough to refresh it
+                dates[position] = modified.dates[i];
+            } else {
+                if (position >= 0) {
+                    remove(position);
+                }
+                insert(modified.ids[i], modified.names[i], modified.dates[i]);
+            }
+        }
+        version = Math.max(version, modified.version);
+        notifyDataSetChanged();
+    }
+
+    // Gets the position of the row with the given identifier (or -1 if not loaded)
+    private int indexOf(long id) {
+        for (int i = 0; i < count; i++) {
+            if (ids[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Removes the row at the given position
+    private void remove(int position) {
+        System.arraycopy(ids, position + 1, ids, position, count - position - 1);
+        System.arraycopy(names, position + 1, names, position, count - position - 1);
+        System.arraycopy(dates, position + 1, dates, position, count - position - 1);
+        count--;
+        names[count] = null;
+    }
+
+    // Inserts the row at its position (sorted by name and identifier), unless it belongs
+    // to a page not loaded yet
+    private void insert(long id, String name, long date) {
+        // Binary search of the first row located after the new one
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            final int comparison = compare(names[middle], ids[middle], name, id);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        if (low == count && !complete) {
+            return;
+        }
+
+        if (count == ids.length) {
+            final int capacity = Math.max(Utils.MEDIA_PAGE_SIZE, ids.length * 2);
+            ids = Arrays.copyOf(ids, capacity);
+            names = Arrays.copyOf(names, capacity);
+            dates = Arrays.copyOf(dates, capacity);
+        }
+        System.arraycopy(ids, low, ids, low + 1, count - low);
+        System.arraycopy(names, low, names, low + 1, count - low);
+        System.arraycopy(dates, low, dates, low + 1, count - low);
+        ids[low] = id;
+        names[low] = name;
+        dates[low] = date;
+        count++;
+    }
+
+    // Compares two rows as sorted by the MediaStore query (null names as empty ones)
+    private static int compare(String name1, long id1, String name2, long id2) {
+        final int comparison = (name1 != null ? name1 : "").compareTo(name2 != null ? name2 : "");
+        return comparison != 0 ? comparison : Long.compare(id1, id2);
+    }
+
+    @Override
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public Object getItem(int position) {
+        return names[position];
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return ids[position];
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        return true;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        final ViewHolder holder;
+
+        // Inflate the View only if there is no View to be recycled
+        if (convertView == null) {
+            convertView = LayoutInflater.from(parent.getContext())
+                    .inflate(R.layout.grid_element, parent, false);
+            holder = new ViewHolder();
+            holder.ivImage = convertView.findViewById(R.id.ivImage);
+            holder.tvImage = convertView.findViewById(R.id.tvImage);
+            convertView.setTag(holder);
+        } else {
+            holder = (ViewHolder) convertView.getTag();
+        }
+
+        // Query the next page in advance when getting close to the last row loaded
+        if (position >= count - Utils.MEDIA_PAGE_PREFETCH) {
+            loadNextPage();
+        }
+
+        // Get the image URI and the key identifying this version of the image in the cache
+        final Uri uri = ContentUris.withAppendedId(
+                MediaStore.Images.Media.EXTERNAL_CONTENT_URI, ids[position]);
+        final String key = ThumbnailCache.key(ids[position], dates[position]);
+        holder.tvImage.setText(names[position]);
+
+        // The recycled View may still be waiting for the image of another cell
+        if (holder.pending != null) {
+            holder.pending.cancel(true);
+            holder.pending = null;
+        }
+        holder.uri = uri;
+
+        // The image previously displayed by the recycled View is no longer held by it
+        if (holder.bitmap != null) {
+            holder.ivImage.setImageDrawable(null);
+            pool.release(holder.bitmap);
+            holder.bitmap = null;
+        }
+
+        // Display the image straight away if already available in memory
+        final Bitmap cached = cache.getFromMemory(key);
+        if (cached != null) {
+            display(holder, cached);
+            return convertView;
+        }
+        holder.ivImage.setImageDrawable(null);
+
+        // Get the image from the disk cache, or decode it, on a background thread
+        // (it is retained for the View, so it is not reused while displayed)
+        holder.pending = storageIO.submit(METRICS_THUMBNAIL, () -> {
+                    Bitmap bitmap = cache.get(key);
+                    if (bitmap == null) {
+                        bitmap = decodeThumbnail(uri);
+                        if (bitmap != null) {
+                            pool.retain(bitmap);
+                            cache.put(key, bitmap);
+                        }
+                    }
+                    return bitmap;
+                },
+                new StorageIO.Callback<Bitmap>() {
+                    @Override
+                    public void onSuccess(Bitmap result) {
+                        // Display the image only if the View is still bound to it
+                        if (uri.equals(holder.uri)) {
+                            display(holder, result);
+                            holder.pending = null;
+                        } else if (result != null) {
+                            pool.release(result);
+                        }
+                    }
+
+                    @Override
+                    public void onError(Exception e) {
+                        Log.e(TAG, "Cannot decode the thumbnail", e);
+                    }
+
+                    @Override
+                    public void onDiscarded(Bitmap result) {
+                        // The View was recycled meanwhile, so it does not hold the image
+                        pool.release(result);
+                    }
+                });
+
+        return convertView;
+    }
+
+    // Displays the image, already retained for the View, which holds it until recycled
+    private static void display(ViewHolder holder, Bitmap bitmap) {
+        holder.ivImage.setImageBitmap(bitmap);
+        holder.bitmap = bitmap;
+    }
+
+    // Decodes the image at the size of the cell into a bitmap of the pool
+    // (executed on a background thread)
+    private Bitmap decodeThumbnail(Uri uri) throws IOException {
+        // API > 28 provides thumbnails already scaled (and cached) by the system.
+        // They cannot be decoded into bitmaps of the pool, and never return to it (immutable)
+        if (Build.VERSION.SDK_INT > 28) {
+            return resolver.loadThumbnail(uri, new Size(size, size), null);
+        }
+
+        final ParcelFileDescriptor pfd = resolver.openFileDescriptor(uri, "r");
+        if (pfd == null) {
+            throw new FileNotFoundException(uri.toString());
+        }
+        try {
+            // Get only the dimensions of the image, without allocating its pixels
+            final BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeFileDescriptor(pfd.getFileDescriptor(), null, options);
+
+            // Decode a subsampled version of the image, close to the size of the cell
+            options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, size);
+            return pool.decode(options, decodeOptions ->
+                    BitmapFactory.decodeFileDescriptor(pfd.getFileDescriptor(), null, decodeOptions));
+        } finally {
+            pfd.close();
+        }
+    }
+
+    // Gets the largest power of 2 that keeps both dimensions of the image
+    // equal or larger than the requested size once subsampled
+    static int calculateInSampleSize(int width, int height, int size) {
+        int inSampleSize = 1;
+        while ((width / (inSampleSize * 2)) >= size && (height / (inSampleSize * 2)) >= size) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    // Holds references to the Views of the cell and the image it is bound to
+    private static class ViewHolder {
+        ImageView ivImage;
+        TextView tvImage;
+        Uri uri;
+        // Image displayed (retained until the View is recycled)
+        Bitmap bitmap;
+        Future<Bitmap> pending;
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Two-tier cache for the thumbnails displayed in the GridView:
+// a memory cache bounded by the bytes of the bitmaps it holds, backed by a disk cache
+// bounded by the bytes of the files it stores. In both cases, the least recently used
+// thumbnails are evicted first. Keys identify a given version of an image,
+// so modified images are never served from the cache. Thumbnails evicted from memory
+// return to the pool of bitmaps once no longer displayed, and thumbnails read from disk
+// are decoded into bitmaps of that pool
+public class ThumbnailCache {
+
+    // Tag of the messages logged
+    private static final String TAG = "ThumbnailCache";
+
+    private final LruCache<String, Bitmap> memory;
+    private final BitmapPool pool;
+    private final File directory;
+    private final long maxDiskBytes;
+    // Bytes currently stored in the disk cache (-1 until the directory is scanned)
+    private long diskBytes = -1;
+
+    // Counters to evaluate the effectiveness of the cache
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public ThumbnailCache(int maxMemoryBytes, File directory, long maxDiskBytes,
+                          BitmapPool pool) {
+        this.memory = new LruCache<String, Bitmap>(maxMemoryBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldValue,
+                                        Bitmap newValue) {
+                // The memory cache no longer holds the bitmap
+                pool.release(oldValue);
+            }
+        };
+        this.pool = pool;
+        this.directory = directory;
+        this.maxDiskBytes = maxDiskBytes;
+    }
+
+    // Gets the key identifying the given version of a MediaStore image
+    public static String key(long id, long dateModified) {
+        return id + "_" + dateModified;
+    }
+
+    // Gets the thumbnail only if available in memory (it can be called from the main thread).
+    // The thumbnail is retained for the caller, which must release it once no longer displayed
+    public Bitmap getFromMemory(String key) {
+        final Bitmap bitmap;
+        // It must not be evicted (and reused) before being retained
+        synchronized (memory) {
+            bitmap = memory.get(key);
+            if (bitmap != null) {
+                pool.retain(bitmap);
+            }
+        }
+        if (bitmap != null) {
+            memoryHits.incrementAndGet();
+        }
+        return bitmap;
+    }
+
+    // Gets the thumbnail from memory or, if not available, from disk.
+    // The thumbnail is retained for the caller, which must release it once no longer displayed.
+    // Returns null if not cached (executed on a background thread)
+    public Bitmap get(String key) throws IOException {
+        Bitmap bitmap = getFromMemory(key);
+        if (bitmap == null) {
+            final File file = new File(directory, key);
+            bitmap = decodeFromDisk(file);
+            if (bitmap != null) {
+                diskHits.incrementAndGet();
+                // Keep track of the last access to evict the least recently used files
+                file.setLastModified(System.currentTimeMillis());
+                pool.retain(bitmap);
+                putInMemory(key, bitmap);
+            } else {
+                misses.incrementAndGet();
+            }
+        }
+        return bitmap;
+    }
+
+    // Decodes the thumbnail stored in the file into a bitmap of the pool (null if not stored)
+    private Bitmap decodeFromDisk(File file) throws IOException {
+        // Get only the dimensions of the thumbnail, to find a bitmap large enough
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        return pool.decode(options, decodeOptions ->
+                BitmapFactory.decodeFile(file.getPath(), decodeOptions));
+    }
+
+    // Keeps the thumbnail in memory, which holds it until evicted
+    private void putInMemory(String key, Bitmap bitmap) {
+        synchronized (memory) {
+            pool.retain(bitmap);
+            memory.put(key, bitmap);
+        }
+    }
+
+    // Stores the thumbnail both in memory and on disk (executed on a background thread)
+    public void put(String key, Bitmap bitmap) {
+        putInMemory(key, bitmap);
+        try {
+            writeToDisk(key, bitmap);
+        } catch (IOException e) {
+            // The thumbnail is still cached in memory
+            Log.w(TAG, "Cannot cache " + key + " on disk", e);
+        }
+    }
+
+    // Compresses the thumbnail into the disk cache, evicting old files if required
+    private synchronized void writeToDisk(String key, Bitmap bitmap) throws IOException {
+        if (diskBytes < 0) {
+            scanDisk();
+        }
+
+        final File file = new File(directory, key);
+        final File temp = new File(directory, key + ".tmp");
+        final FileOutputStream fos = new FileOutputStream(temp);
+        try {
+            bitmap.compress(getCompressFormat(), Utils.THUMBNAIL_QUALITY, fos);
+        } finally {
+            fos.close();
+        }
+        // Files are only visible once completely written
+        diskBytes -= file.length();
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Cannot store " + key);
+        }
+        diskBytes += file.length();
+
+        if (diskBytes > maxDiskBytes) {
+            trimDisk();
+        }
+    }
+
+    // Gets the lossy WebP format available at the current API level
+    @SuppressWarnings("deprecation")
+    private static Bitmap.CompressFormat getCompressFormat() {
+        return Build.VERSION.SDK_INT >= 30 ?
+                Bitmap.CompressFormat.WEBP_LOSSY : Bitmap.CompressFormat.WEBP;
+    }
+
+    // Computes the bytes currently stored in the disk cache
+    private void scanDisk() {
+        diskBytes = 0;
+        if (!directory.isDirectory()) {
+            directory.mkdirs();
+        }
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                diskBytes += file.length();
+            }
+        }
+    }
+
+    // Deletes the least recently used files until the disk cache is 90% full
+    private void trimDisk() {
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        // Sort files from the least to the most recently used
+        final long[] lastModified = new long[files.length];
+        final Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            lastModified[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(lastModified[a], lastModified[b]));
+
+        final long target = maxDiskBytes * 9 / 10;
+        for (int i = 0; i < order.length && diskBytes > target; i++) {
+            final File file = files[order[i]];
+            final long length = file.length();
+            if (file.delete()) {
+                diskBytes -= length;
+            }
+        }
+    }
+
+    public long getMemoryHits() {
+        return memoryHits.get();
+    }
+
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    // Gets a summary of the usage and effectiveness of the cache
+    @Override
+    public String toString() {
+        return "ThumbnailCache{memory=" + memory.size() + "/" + memory.maxSize() + " bytes"
+                + ", disk=" + diskBytes + "/" + maxDiskBytes + " bytes"
+                + ", memoryHits=" + memoryHits.get()
+                + ", diskHits=" + diskHits.get()
+                + ", misses=" + misses.get() + "}";
+    }
+}
@@ -6,21 +6,6 @@ package labs.dadm.l0403_files;
 
 public class Utils {
 
-    // Constants identifying the keys for the adapter
-    public static final String IMAGE = "Image";
-    public static final String NAME = "Name";
-
-    // Constants identifying the current operation
-    public static final int READ_RESOURCES = 0;
-    public static final int READ_INTERNAL_STORAGE = 1;
-    public static final int READ_PRIVATE_EXTERNAL_STORAGE = 2;
-    public static final int READ_PUBLIC_MEDIA_STORAGE = 3;
-    public static final int READ_PUBLIC_OTHER_STORAGE = 4;
-    public static final int WRITE_INTERNAL_STORAGE = 5;
-    public static final int WRITE_PUBLIC_MEDIA_STORAGE = 6;
-    public static final int WRITE_PRIVATE_EXTERNAL_STORAGE = 7;
-    public static final int WRITE_PUBLIC_OTHER_STORAGE = 8;
-
     // Constants identifying the selection in the Spinner
     public static final int RESOURCES = 0;
     public static final int INTERNAL_STORAGE = 1;
@@ -31,4 +16,105 @@ public class Utils {
     // Constant defining the date and time format to be used as a timestamp
     public static final String DATE_TIME_FORMAT = "_ddMMyy_HHmmss";
 
+    // Constant defining the maximum number of pages of text read but not displayed yet
+    public static final int PAGES_IN_FLIGHT = 2;
+
+    // Constants defining the threads and queue size used to decode images for the GridView
+    public static final int THUMBNAIL_THREADS = 2;
+    public static final int THUMBNAIL_QUEUE_CAPACITY = 128;
+
+    // Constants defining the threads and queue size used for long-running bulk operations
+    // (transfers, imports, batch exports), so they never hold up interactive reads and writes
+    public static final int BULK_THREADS = 1;
+    public static final int BULK_QUEUE_CAPACITY = 8;
+
+    // Constants defining the limits of the cache of images for the GridView
+    // (fraction of the heap for the memory cache, and size of the disk cache)
+    public static final int THUMBNAIL_MEMORY_CACHE_FRACTION = 8;
+    public static final long THUMBNAIL_DISK_CACHE_BYTES = 32 * 1024 * 1024;
+    public static final String THUMBNAIL_DISK_CACHE_DIR = "thumbnails";
+    public static final int THUMBNAIL_QUALITY = 90;
+    // Constant defining the fraction of the heap for the bitmaps kept to be reused
+    public static final int BITMAP_POOL_FRACTION = 16;
+
+    // Constants defining the rows queried at once from the MediaStore,
+    // and how many rows before the last one loaded the next page is queried
+    public static final int MEDIA_PAGE_SIZE = 60;
+    public static final int MEDIA_PAGE_PREFETCH = 15;
+
+    // Constant defining the time (in milliseconds) to group MediaStore notifications
+    public static final long MEDIA_SYNC_DELAY = 300;
+
+    // Constants defining the number of images exported at once to public media storage,
+    // and how many of them are encoded and inserted together
+    public static final int BATCH_EXPORT_SIZE = 100;
+    public static final int EXPORT_CHUNK_SIZE = 25;
+
+    // Constants defining how data written to files is forced to the storage device,
+    // and the time window (in milliseconds) to group the appends forced at once
+    // (see AtomicFileWriter.DURABILITY_GROUP_APPENDS)
+    public static final int WRITE_DURABILITY = AtomicFileWriter.DURABILITY_SYNC;
+    public static final long GROUP_COMMIT_WINDOW = 2000;
+
+    // Constant defining the key measuring the group commits forced before the app is stopped
+    public static final String METRICS_GROUP_COMMIT = "group_commit.flush";
+    // Constant defining the suffix of the key measuring the copy/move operations of a source
+    public static final String METRICS_TRANSFER = ".transfer";
+
+    // Constant defining the time (in milliseconds) without edits before saving automatically
+    public static final long AUTOSAVE_DELAY = 1000;
+
+    // Constants defining when the journal of edits of internal storage is compacted:
+    // once larger than the given fraction of the file, and of the given number of bytes
+    public static final double JOURNAL_COMPACTION_RATIO = 0.5;
+    public static final long JOURNAL_COMPACTION_MIN_BYTES = 64 * 1024;
+
+    // Constants defining whether the files of each storage target are written compressed
+    // (compressed files are always detected and decompressed when read)
+    public static final boolean COMPRESS_INTERNAL_STORAGE = true;
+    public static final boolean COMPRESS_PRIVATE_EXTERNAL_STORAGE = false;
+
+    // Constant defining the size (in bytes) from which files are displayed in the read-only
+    // viewer, as the EditText cannot handle them
+    public static final long VIEWER_THRESHOLD = 1024 * 1024;
+    // Constants defining the pages of lines kept in memory by the viewer,
+    // and how many lines before the end of a page the next one is read
+    public static final int VIEWER_CACHED_PAGES = 16;
+    public static final int VIEWER_PREFETCH_LINES = 16;
+
+    // Constants defining the folder of the full-text index, the maximum number of words
+    // indexed per file, and how many occurrences per file are returned by a search
+    public static final String SEARCH_INDEX_DIR = "search_index";
+    public static final int SEARCH_MAX_TERMS = 1000000;
+    public static final int SEARCH_MAX_OFFSETS = 100;
+    // Key measuring the searches
+    public static final String METRICS_SEARCH = "search.query";
+
+    // Constants defining the folder where documents are imported,
+    // and how many of them are read at once
+    public static final String IMPORT_DIR = "imported";
+    public static final int IMPORT_THREADS = 4;
+    // Keys measuring the import of whole folders, and the listing of the documents imported
+    public static final String METRICS_IMPORT = "import.tree";
+    public static final String METRICS_IMPORT_LIST = "import.list";
+
+    // Name of the preferences keeping the entry of each image exported by the hash of its bytes
+    public static final String MEDIA_HASHES_PREFERENCES = "media_hashes";
+
+    // Constants defining the prefetch of the storage targets likely to be selected next:
+    // the time (in milliseconds) a prefetch can take before being abandoned, and the chars kept
+    // in memory (up to 3 bytes each, below VIEWER_THRESHOLD, so files displayed in the viewer
+    // are never prefetched)
+    public static final long PREFETCH_TIME_BUDGET = 250;
+    public static final long PREFETCH_MAX_CHARS = 256 * 1024;
+    // Keys measuring the time until the contents are displayed at startup, and after selecting
+    // a storage target whose contents were prefetched (warm) or not (cold)
+    public static final String METRICS_STARTUP = "ui.startup";
+    public static final String METRICS_SWITCH_WARM = "ui.switch.warm";
+    public static final String METRICS_SWITCH_COLD = "ui.switch.cold";
+
+    // Size of the blocks compared to rewrite only those changed when saving again a document
+    // created through the Storage Access Framework
+    public static final int DOCUMENT_BLOCK_SIZE = 64 * 1024;
+
 }
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+// Checks that BlockDelta rewrites only the blocks that changed (plain JVM)
+public class BlockDeltaTest {
+
+    // Small blocks, so the contents span several of them
+    private static final int BLOCK_SIZE = 16;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] contents(int length) {
+        final byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) ('a' + i % 26);
+        }
+        return bytes;
+    }
+
+    // Writes the first version of the file, and returns its checksums
+    private static BlockDelta.Checksums writeFull(File file, byte[] bytes) throws IOException {
+        final BlockDelta.Writer writer =
+                BlockDelta.newFullWriter(new FileOutputStream(file), BLOCK_SIZE);
+        try {
+            writer.write(bytes);
+        } finally {
+            writer.close();
+        }
+        return writer.getChecksums();
+    }
+
+    // Writes the new version over the last one, and returns the writer once closed
+    private static BlockDelta.Writer writeDelta(File file, byte[] bytes,
+                                                BlockDelta.Checksums last) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            final BlockDelta.Writer writer = BlockDelta.newDeltaWriter(raf.getChannel(), last);
+            writer.write(bytes);
+            writer.close();
+            return writer;
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Test
+    public void fullWriterWritesEveryBlock() throws IOException {
+        final byte[] bytes = contents(40);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final BlockDelta.Writer writer = BlockDelta.newFullWriter(out, BLOCK_SIZE);
+        // Written a byte at a time and in bulk
+        writer.write(bytes[0]);
+        writer.write(bytes, 1, bytes.length - 1);
+        writer.close();
+
+        assertArrayEquals(bytes, out.toByteArray());
+        assertEquals(3, writer.getWrittenBlocks());
+        assertEquals(40, writer.getChecksums().length);
+        assertEquals(3, writer.getChecksums().getBlockCount());
+    }
+
+    @Test
+    public void onlyChangedBlocksAreRewritten() throws IOException {
+        final File file = folder.newFile();
+        final byte[] first = contents(64);
+        final BlockDelta.Checksums checksums = writeFull(file, first);
+
+        final byte[] second = first.clone();
+        second[BLOCK_SIZE + 3] = '#';
+        final BlockDelta.Writer writer = writeDelta(file, second, checksums);
+
+        assertEquals(1, writer.getWrittenBlocks());
+        assertArrayEquals(second, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void shorterContentsTruncateTheFile() throws IOException {
+        final File file = folder.newFile();
+        final byte[] first = contents(64);
+        final BlockDelta.Checksums checksums = writeFull(file, first);
+
+        // The last block kept is now shorter, so it is rewritten
+        final byte[] second = Arrays.copyOf(first, 2 * BLOCK_SIZE + 5);
+        final BlockDelta.Writer writer = writeDelta(file, second, checksums);
+
+        assertEquals(1, writer.getWrittenBlocks());
+        assertEquals(second.length, writer.getChecksums().length);
+        assertArrayEquals(second, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void longerContentsExtendTheFile() throws IOException {
+        final File file = folder.newFile();
+        final byte[] first = contents(2 * BLOCK_SIZE + 5);
+        final BlockDelta.Checksums checksums = writeFull(file, first);
+
+        // The last block is completed, and a new one appended
+        final byte[] second = contents(4 * BLOCK_SIZE);
+        final BlockDelta.Writer writer = writeDelta(file, second, checksums);
+
+        assertEquals(2, writer.getWrittenBlocks());
+        assertArrayEquals(second, Files.readAllBytes(file.toPath()));
+
+        // The checksums returned describe the new version
+        final BlockDelta.Writer unchanged = writeDelta(file, second, writer.getChecksums());
+        assertEquals(0, unchanged.getWrittenBlocks());
+        assertArrayEquals(second, Files.readAllBytes(file.toPath()));
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+// Checks that CompressedBlockFormat restores the contents and detects corrupted blocks (plain JVM)
+public class CompressedBlockFormatTest {
+
+    // Small blocks, so the contents span several of them
+    private static final int BLOCK_SIZE = 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // Text that compresses well, followed by random bytes that do not compress at all
+    private static byte[] contents(int textLength, int randomLength) {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; text.length() < textLength; i++) {
+            text.append("Line ").append(i).append('\n');
+        }
+        final byte[] bytes = Arrays.copyOf(
+                text.toString().getBytes(StandardCharsets.UTF_8), textLength + randomLength);
+        final byte[] random = new byte[randomLength];
+        new Random(42).nextBytes(random);
+        System.arraycopy(random, 0, bytes, textLength, randomLength);
+        return bytes;
+    }
+
+    private File compress(byte[] bytes) throws IOException {
+        final File file = folder.newFile();
+        final CompressedBlockFormat.BlockOutputStream out =
+                new CompressedBlockFormat.BlockOutputStream(new FileOutputStream(file),
+                        BLOCK_SIZE, CompressedBlockFormat.DEFAULT_LEVEL);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[300];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void contentsAreRestoredSequentially() throws IOException {
+        final byte[] bytes = contents(5000, 3000);
+        final File file = compress(bytes);
+
+        assertTrue(CompressedBlockFormat.isCompressed(file));
+        assertArrayEquals(bytes, readAll(
+                new CompressedBlockFormat.BlockInputStream(new FileInputStream(file))));
+        assertArrayEquals(bytes, readAll(
+                CompressedBlockFormat.decompressIfNeeded(new FileInputStream(file))));
+    }
+
+    @Test
+    public void anyBlockIsRestoredThroughTheIndex() throws IOException {
+        final byte[] bytes = contents(5000, 3000);
+        final CompressedBlockFormat.RandomAccess access =
+                new CompressedBlockFormat.RandomAccess(compress(bytes));
+        try {
+            assertEquals(bytes.length, access.length());
+            assertEquals((bytes.length + BLOCK_SIZE - 1) / BLOCK_SIZE, access.getBlockCount());
+            // Read the blocks backwards, so each one is located on its own
+            for (int i = access.getBlockCount() - 1; i >= 0; i--) {
+                final int start = (int) access.getBlockOffset(i);
+                assertEquals(i * BLOCK_SIZE, start);
+                assertArrayEquals(Arrays.copyOfRange(bytes, start,
+                        Math.min(bytes.length, start + BLOCK_SIZE)), access.readBlock(i));
+            }
+            assertEquals(0, access.findBlock(0));
+            assertEquals(2, access.findBlock(2 * BLOCK_SIZE + 10));
+            assertEquals(access.getBlockCount() - 1, access.findBlock(bytes.length - 1));
+        } finally {
+            access.close();
+        }
+    }
+
+    @Test
+    public void emptyContentsHaveNoBlocks() throws IOException {
+        final File file = compress(new byte[0]);
+        assertEquals(0, readAll(
+                new CompressedBlockFormat.BlockInputStream(new FileInputStream(file))).length);
+        final CompressedBlockFormat.RandomAccess access =
+                new CompressedBlockFormat.RandomAccess(file);
+        try {
+            assertEquals(0, access.getBlockCount());
+            assertEquals(0, access.length());
+        } finally {
+            access.close();
+        }
+    }
+
+    @Test
+    public void corruptedBlockIsDetected() throws IOException {
+        // Random bytes are stored as they are, so the damage only shows in the CRC
+        final byte[] bytes = contents(0, 3 * BLOCK_SIZE);
+        final File file = compress(bytes);
+
+        // Flip the first byte stored in the second block: header, then block header and bytes
+        final long secondBlock = 12 + 12 + BLOCK_SIZE;
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(secondBlock + 12);
+            final int value = raf.read();
+            raf.seek(secondBlock + 12);
+            raf.write(value ^ 0xFF);
+        } finally {
+            raf.close();
+        }
+
+        try {
+            readAll(new CompressedBlockFormat.BlockInputStream(new FileInputStream(file)));
+            fail("The corrupted block should be detected");
+        } catch (IOException e) {
+            assertEquals("Corrupted block", e.getMessage());
+        }
+
+        // The other blocks can still be read on their own
+        final CompressedBlockFormat.RandomAccess access =
+                new CompressedBlockFormat.RandomAccess(file);
+        try {
+            assertArrayEquals(Arrays.copyOfRange(bytes, 0, BLOCK_SIZE), access.readBlock(0));
+            assertArrayEquals(Arrays.copyOfRange(bytes, 2 * BLOCK_SIZE, 3 * BLOCK_SIZE),
+                    access.readBlock(2));
+            try {
+                access.readBlock(1);
+                fail("The corrupted block should be detected");
+            } catch (IOException e) {
+                assertEquals("Corrupted block", e.getMessage());
+            }
+        } finally {
+            access.close();
+        }
+    }
+
+    @Test
+    public void plainTextIsNotMistakenForCompressed() throws IOException {
+        final byte[] bytes = "Plain text".getBytes(StandardCharsets.UTF_8);
+        final File file = folder.newFile();
+        final FileOutputStream fos = new FileOutputStream(file);
+        try {
+            fos.write(bytes);
+        } finally {
+            fos.close();
+        }
+
+        assertFalse(CompressedBlockFormat.isCompressed(file));
+        assertArrayEquals(bytes, readAll(
+                CompressedBlockFormat.decompressIfNeeded(new FileInputStream(file))));
+    }
+}
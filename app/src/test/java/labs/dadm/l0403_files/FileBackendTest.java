@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+// Checks the operations of FileBackend on a temporary folder (plain JVM)
+public class FileBackendTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FileBackend backend;
+
+    @Before
+    public void setUp() {
+        backend = new FileBackend("test", folder.getRoot(), "file.txt",
+                new AtomicFileWriter(0), false, null, null);
+    }
+
+    // Gets the contents of the backend as text
+    static String readText(StorageBackend backend) throws IOException {
+        final StringBuilder text = new StringBuilder();
+        backend.read(text::append);
+        return text.toString();
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void statFailsUntilWritten() throws IOException {
+        backend.stat();
+    }
+
+    @Test
+    public void writeThenRead() throws IOException {
+        final String text = "Line 1\nLínea 2 with non-ASCII chars: ñ€😀\n";
+        backend.write(text, AtomicFileWriter.DURABILITY_SYNC);
+
+        assertEquals(text, readText(backend));
+        final StorageBackend.Stat stat = backend.stat();
+        assertEquals(text.getBytes(StandardCharsets.UTF_8).length, stat.length);
+        assertEquals(backend.getFile().lastModified(), stat.lastModified);
+        // The temporary file does not remain once replaced
+        assertEquals(1, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void writeReplacesPreviousContents() throws IOException {
+        backend.write("Some long contents to be replaced", AtomicFileWriter.DURABILITY_NONE);
+        backend.write("Short", AtomicFileWriter.DURABILITY_GROUP_APPENDS);
+
+        assertEquals("Short", readText(backend));
+        assertEquals(5, backend.stat().length);
+    }
+
+    @Test
+    public void writeCompressedThenRead() throws IOException {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            text.append("Repeated line ").append(i % 10).append('\n');
+        }
+        backend.setCompressed(true);
+        backend.write(text, AtomicFileWriter.DURABILITY_NONE);
+
+        assertTrue(backend.stat().length < text.length());
+        assertEquals(text.toString(), readText(backend));
+    }
+
+    @Test
+    public void rawStreams() throws IOException {
+        final byte[] bytes = {0, 1, 2, (byte) 0xFF};
+        final OutputStream os = backend.openOutputStream();
+        try {
+            os.write(bytes);
+        } finally {
+            os.close();
+        }
+
+        final InputStream is = backend.openInputStream();
+        try {
+            for (byte expected : bytes) {
+                assertEquals(expected & 0xFF, is.read());
+            }
+            assertEquals(-1, is.read());
+        } finally {
+            is.close();
+        }
+    }
+
+    @Test
+    public void versionChangesWhenModified() throws IOException {
+        final long initial = backend.getVersion();
+        backend.write("Text", AtomicFileWriter.DURABILITY_NONE);
+        final long written = backend.getVersion();
+        assertTrue(written != initial);
+
+        // Writing the same contents again is skipped
+        backend.write("Text", AtomicFileWriter.DURABILITY_NONE);
+        assertEquals(written, backend.getVersion());
+
+        backend.delete();
+        assertTrue(backend.getVersion() != written);
+    }
+
+    @Test
+    public void deleteRemovesFile() throws IOException {
+        backend.write("Text", AtomicFileWriter.DURABILITY_NONE);
+        backend.delete();
+
+        assertFalse(backend.getFile().exists());
+        try {
+            backend.stat();
+            throw new AssertionError("The file should not exist");
+        } catch (FileNotFoundException e) {
+            // Expected
+        }
+        // Deleting contents that do not exist is not an error
+        backend.delete();
+    }
+
+    @Test
+    public void replaceWithMovesFile() throws IOException {
+        final File source = new File(folder.getRoot(), "source.tmp");
+        final FileBackend other = new FileBackend("other", folder.getRoot(), "source.tmp",
+                new AtomicFileWriter(0), false, null, null);
+        other.write("Moved", AtomicFileWriter.DURABILITY_NONE);
+
+        backend.replaceWith(source);
+
+        assertFalse(source.exists());
+        assertEquals("Moved", readText(backend));
+    }
+
+    @Test
+    public void permissionsAreGivenByCaller() {
+        assertNull(backend.getPermission(false));
+        final FileBackend external = new FileBackend("external", folder.getRoot(), "file.txt",
+                new AtomicFileWriter(0), true, "read", "write");
+        assertEquals("read", external.getPermission(false));
+        assertEquals("write", external.getPermission(true));
+        assertTrue(external.isExternal());
+    }
+}
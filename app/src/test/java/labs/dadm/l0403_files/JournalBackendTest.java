@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+// Checks the operations of JournalBackend on a temporary folder (plain JVM)
+public class JournalBackendTest {
+
+    // Time to wait for the journal to be compacted in background
+    private static final long COMPACTION_TIMEOUT = 5000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private AtomicFileWriter writer;
+    private JournalBackend backend;
+    private File journal;
+
+    @Before
+    public void setUp() {
+        writer = new AtomicFileWriter(0);
+        // Compacted once the journal is larger than the base file and 1 KB
+        backend = new JournalBackend("test", folder.getRoot(), "file.txt", writer, 1, 1024);
+        journal = new File(backend.getFile().getPath() + ".journal");
+    }
+
+    private JournalBackend reopen() {
+        return new JournalBackend("test", folder.getRoot(), "file.txt", writer, 1, 1024);
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void statFailsUntilWritten() throws IOException {
+        backend.stat();
+    }
+
+    @Test
+    public void editsAreAppendedToJournal() throws IOException {
+        backend.write("First version", AtomicFileWriter.DURABILITY_SYNC);
+        backend.write("First edited version", AtomicFileWriter.DURABILITY_SYNC);
+
+        assertTrue(journal.exists());
+        assertEquals("First edited version", FileBackendTest.readText(backend));
+        assertEquals("First edited version", FileBackendTest.readText(reopen()));
+        assertEquals("First edited version".getBytes(StandardCharsets.UTF_8).length,
+                backend.stat().length);
+    }
+
+    @Test
+    public void journalIsCompactedInBackground() throws Exception {
+        // The whole text is appended to the journal, which grows past the limit
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            text.append("Line number ").append(i).append('\n');
+        }
+        backend.write(text, AtomicFileWriter.DURABILITY_NONE);
+
+        final long deadline = System.currentTimeMillis() + COMPACTION_TIMEOUT;
+        while (journal.exists() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(journal.exists());
+        assertTrue(backend.getFile().exists());
+        assertEquals(text.toString(), FileBackendTest.readText(backend));
+        assertEquals(text.toString(), FileBackendTest.readText(reopen()));
+    }
+
+    @Test
+    public void deleteRemovesBaseAndJournal() throws IOException {
+        backend.write("Base", AtomicFileWriter.DURABILITY_NONE);
+        backend.write("Base with edits", AtomicFileWriter.DURABILITY_NONE);
+        backend.delete();
+
+        assertFalse(backend.getFile().exists());
+        assertFalse(journal.exists());
+        try {
+            backend.stat();
+            throw new AssertionError("The file should not exist");
+        } catch (FileNotFoundException e) {
+            // Expected
+        }
+    }
+}
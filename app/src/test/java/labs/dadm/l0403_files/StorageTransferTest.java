@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+// Checks the transfers between file storage targets on a temporary folder (plain JVM)
+public class StorageTransferTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String text;
+    private FileBackend compressed;
+    private FileBackend plain;
+
+    @Before
+    public void setUp() throws IOException {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            builder.append("Line ").append(i % 7).append('\n');
+        }
+        text = builder.toString();
+        final File dir = folder.newFolder("source");
+        compressed = new FileBackend("compressed", dir, "file.txt",
+                new AtomicFileWriter(0), false, null, null);
+        compressed.setCompressed(true);
+        plain = new FileBackend("plain", folder.newFolder("target"), "file.txt",
+                new AtomicFileWriter(0), false, null, null);
+    }
+
+    @Test
+    public void compressedFilesAreDecompressedForPlainTargets() throws IOException {
+        compressed.write(text, AtomicFileWriter.DURABILITY_NONE);
+        assertTrue(CompressedBlockFormat.isCompressed(compressed.getFile()));
+
+        final long transferred = StorageTransfer.copy(compressed, plain, null);
+
+        assertFalse(CompressedBlockFormat.isCompressed(plain.getFile()));
+        assertEquals(text.length(), transferred);
+        assertEquals(text, FileBackendTest.readText(plain));
+    }
+
+    @Test
+    public void compressedFilesAreKeptForCompressedTargets() throws IOException {
+        compressed.write(text, AtomicFileWriter.DURABILITY_NONE);
+        plain.setCompressed(true);
+
+        final long transferred = StorageTransfer.copy(compressed, plain, null);
+
+        assertTrue(CompressedBlockFormat.isCompressed(plain.getFile()));
+        assertEquals(compressed.getFile().length(), transferred);
+        assertEquals(text, FileBackendTest.readText(plain));
+    }
+
+    @Test
+    public void moveDeletesSource() throws IOException {
+        plain.write(text, AtomicFileWriter.DURABILITY_NONE);
+
+        StorageTransfer.move(plain, compressed, null);
+
+        assertFalse(plain.getFile().exists());
+        assertEquals(text, FileBackendTest.readText(compressed));
+    }
+}
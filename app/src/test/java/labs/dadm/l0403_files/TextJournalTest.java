@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+// Checks how TextJournal replays its records, including damaged ones (plain JVM)
+public class TextJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private AtomicFileWriter writer;
+    private File base;
+    private File journal;
+
+    @Before
+    public void setUp() {
+        writer = new AtomicFileWriter(0);
+        base = new File(folder.getRoot(), "file.txt");
+        journal = new File(base.getPath() + ".journal");
+    }
+
+    // Journal that is never compacted on its own
+    private TextJournal open() {
+        return new TextJournal(base, writer, Double.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    private static String load(TextJournal textJournal) throws IOException {
+        final StringBuilder text = new StringBuilder();
+        textJournal.load(text::append);
+        return text.toString();
+    }
+
+    private static String readStream(TextJournal textJournal) throws IOException {
+        final InputStream is = textJournal.openInputStream();
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[1024];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        } finally {
+            is.close();
+        }
+    }
+
+    @Test
+    public void editsAreReplayedOverCompressedBase() throws IOException {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            text.append("Línea ").append(i).append(" 😀\n");
+        }
+        final TextJournal textJournal = open();
+        textJournal.setCompressed(true);
+        textJournal.save(text.toString(), AtomicFileWriter.DURABILITY_NONE);
+        textJournal.compact();
+        assertTrue(CompressedBlockFormat.isCompressed(base));
+
+        // Insert, delete and replace at both ends and in the middle
+        text.insert(0, "Start\n");
+        textJournal.save(text.toString(), AtomicFileWriter.DURABILITY_NONE);
+        text.delete(20000, 30000);
+        textJournal.save(text.toString(), AtomicFileWriter.DURABILITY_NONE);
+        text.replace(100, 200, "ñ");
+        textJournal.save(text.toString(), AtomicFileWriter.DURABILITY_NONE);
+        text.append("End");
+        textJournal.save(text.toString(), AtomicFileWriter.DURABILITY_NONE);
+
+        final String expected = text.toString();
+        final TextJournal reopened = open();
+        assertEquals(expected.getBytes(StandardCharsets.UTF_8).length,
+                reopened.encodedLength());
+        assertEquals(expected, load(reopened));
+        assertEquals(expected, readStream(open()));
+        assertEquals(expected.getBytes(StandardCharsets.UTF_8).length,
+                textJournal.encodedLength());
+    }
+
+    @Test
+    public void tornTailRecordIsDiscarded() throws IOException {
+        final TextJournal textJournal = open();
+        textJournal.save("Base text", AtomicFileWriter.DURABILITY_NONE);
+        textJournal.compact();
+        textJournal.save("Base text edited", AtomicFileWriter.DURABILITY_NONE);
+        final long firstRecordEnd = journal.length();
+        textJournal.save("Base text edited twice", AtomicFileWriter.DURABILITY_NONE);
+
+        // The app crashed while appending the last record
+        final RandomAccessFile raf = new RandomAccessFile(journal, "rw");
+        try {
+            raf.setLength(journal.length() - 3);
+        } finally {
+            raf.close();
+        }
+
+        final TextJournal reopened = open();
+        assertEquals("Base text edited", load(reopened));
+        assertEquals(firstRecordEnd, journal.length());
+        assertEquals("Base text edited".length(), reopened.encodedLength());
+
+        // New edits are appended after the last valid record
+        reopened.save("Base text edited again", AtomicFileWriter.DURABILITY_NONE);
+        assertEquals("Base text edited again", load(open()));
+    }
+
+    @Test
+    public void corruptedRecordIsDiscarded() throws IOException {
+        final TextJournal textJournal = open();
+        textJournal.save("Base text", AtomicFileWriter.DURABILITY_NONE);
+        textJournal.compact();
+        textJournal.save("Base text edited", AtomicFileWriter.DURABILITY_NONE);
+
+        // Flip the last inserted byte, so the CRC does not match
+        final RandomAccessFile raf = new RandomAccessFile(journal, "rw");
+        try {
+            raf.seek(journal.length() - 1);
+            final int last = raf.read();
+            raf.seek(journal.length() - 1);
+            raf.write(last ^ 0xFF);
+        } finally {
+            raf.close();
+        }
+
+        final TextJournal reopened = open();
+        assertEquals(-1, reopened.encodedLength());
+        assertEquals("Base text", load(reopened));
+    }
+
+    @Test
+    public void legacyJournalIsReplayedAndCompacted() throws IOException {
+        final byte[] baseBytes = "Old base".getBytes(StandardCharsets.UTF_8);
+        final FileOutputStream fos = new FileOutputStream(base);
+        try {
+            fos.write(baseBytes);
+        } finally {
+            fos.close();
+        }
+
+        // Journal of version 1, replacing "base" with "text"
+        final CRC32 crc = new CRC32();
+        crc.update(baseBytes, 0, baseBytes.length);
+        final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        final DataOutputStream payloadData = new DataOutputStream(payload);
+        payloadData.writeInt(4);
+        payloadData.writeInt(4);
+        payloadData.write("text".getBytes(StandardCharsets.UTF_8));
+        final CRC32 payloadCrc = new CRC32();
+        payloadCrc.update(payload.toByteArray(), 0, payload.size());
+        final DataOutputStream data = new DataOutputStream(new FileOutputStream(journal));
+        try {
+            data.writeInt(0x4A524E4C);
+            data.writeInt(1);
+            data.writeLong(baseBytes.length);
+            data.writeLong(crc.getValue());
+            data.writeInt(payload.size());
+            data.writeInt((int) payloadCrc.getValue());
+            payload.writeTo(data);
+        } finally {
+            data.close();
+        }
+
+        final TextJournal textJournal = open();
+        assertEquals("Old text".length(), textJournal.encodedLength());
+        assertEquals("Old text", load(textJournal));
+
+        // The next save starts a journal of the current version
+        textJournal.save("Old text edited", AtomicFileWriter.DURABILITY_NONE);
+        assertEquals("Old text", FileBackendTest.readText(new FileBackend("base",
+                folder.getRoot(), "file.txt", writer, false, null, null)));
+        assertEquals("Old text edited", load(open()));
+    }
+}
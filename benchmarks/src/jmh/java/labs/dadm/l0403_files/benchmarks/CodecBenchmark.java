@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import labs.dadm.l0403_files.TextCodec;
+import labs.dadm.l0403_files.TextStreamLoader;
+
+// Compares encoding the text being edited into UTF-8 bytes (and decoding them back) through
+// copies of the whole text, through Writers and Readers, and through TextCodec.
+// Run with "-prof gc" to compare the memory allocated per operation (gc.alloc.rate.norm)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CodecBenchmark {
+
+    // Number of chars in the file
+    @Param({"1024", "1048576", "16777216"})
+    public int size;
+
+    // Mutable text, as the contents of an EditText
+    private StringBuilder text;
+    private File file;
+
+    @Setup
+    public void setUp() throws IOException {
+        text = new StringBuilder(Texts.generate(size));
+        file = Texts.createFile(text.toString(), TextStreamLoader.UTF_8);
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    // The text is copied into a String, which is then encoded as a whole
+    @Benchmark
+    public void getBytes() throws IOException {
+        final FileOutputStream fos = new FileOutputStream(file);
+        try {
+            fos.write(text.toString().getBytes(TextStreamLoader.UTF_8));
+        } finally {
+            fos.close();
+        }
+    }
+
+    // The Writer encodes the text (appending a CharSequence copies it into a String)
+    @Benchmark
+    public void writer() throws IOException {
+        final Writer writer = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file), TextStreamLoader.UTF_8));
+        try {
+            writer.append(text);
+            writer.flush();
+        } finally {
+            writer.close();
+        }
+    }
+
+    // The text is encoded chunk by chunk through the coders and buffers of the thread
+    @Benchmark
+    public void codec() throws IOException {
+        final FileOutputStream fos = new FileOutputStream(file);
+        try {
+            TextCodec.encode(text, fos);
+        } finally {
+            fos.close();
+        }
+    }
+
+    // The Reader decodes the bytes (with its own decoder and buffers)
+    @Benchmark
+    public long reader(Blackhole blackhole) throws IOException {
+        return TextStreamLoader.load(new InputStreamReader(
+                new FileInputStream(file), TextStreamLoader.UTF_8), blackhole::consume);
+    }
+
+    // The bytes are decoded through the coders and buffers of the thread
+    @Benchmark
+    public long decoder(Blackhole blackhole) throws IOException {
+        return TextStreamLoader.load(new FileInputStream(file), blackhole::consume);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import labs.dadm.l0403_files.AtomicFileWriter;
+import labs.dadm.l0403_files.TextStreamLoader;
+
+// Compares reading and writing a whole text file stored as it is and compressed.
+// The bytes stored in the device are reported along with the time
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CompressionBenchmark {
+
+    // Number of chars in the file
+    @Param({"1024", "1048576", "16777216"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean compressed;
+
+    private String text;
+    private File dir;
+    private File file;
+    private AtomicFileWriter writer;
+
+    // Bytes stored in the device by each operation (reported as a secondary result)
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class StoredBytes {
+        public long storedBytes;
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        text = Texts.generate(size);
+        dir = File.createTempFile("benchmark", "");
+        dir.delete();
+        dir.mkdir();
+        file = new File(dir, "benchmark.txt");
+        writer = new AtomicFileWriter(0);
+        writer.write(file, text, AtomicFileWriter.DURABILITY_NONE, compressed);
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (File child : dir.listFiles()) {
+            child.delete();
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public void write(StoredBytes counters) throws IOException {
+        writer.write(file, text, AtomicFileWriter.DURABILITY_NONE, compressed);
+        counters.storedBytes += file.length();
+    }
+
+    @Benchmark
+    public long read(StoredBytes counters) throws IOException {
+        final long chars = TextStreamLoader.load(file, page -> {
+        });
+        counters.storedBytes += file.length();
+        return chars;
+    }
+}
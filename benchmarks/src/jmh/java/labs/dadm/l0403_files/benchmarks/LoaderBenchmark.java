@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.concurrent.TimeUnit;
+
+import labs.dadm.l0403_files.TextStreamLoader;
+
+// Compares reading UTF-8 files through streams and through memory mapping,
+// to check the threshold used by TextStreamLoader to choose between them
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class LoaderBenchmark {
+
+    // Number of chars in the file
+    @Param({"1024", "65536", "262144", "1048576", "16777216"})
+    public int size;
+
+    private File file;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = Texts.createFile(Texts.generate(size), TextStreamLoader.UTF_8);
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public long stream(Blackhole blackhole) throws IOException {
+        return TextStreamLoader.load(new InputStreamReader(
+                new FileInputStream(file), TextStreamLoader.UTF_8), blackhole::consume);
+    }
+
+    @Benchmark
+    public long mapped(Blackhole blackhole) throws IOException {
+        return TextStreamLoader.loadMapped(file, blackhole::consume);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import labs.dadm.l0403_files.TextStreamLoader;
+
+// Compares the strategies to read a whole text file in different charsets
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ReadBenchmark {
+
+    // Number of chars in the file
+    @Param({"1024", "1048576", "16777216"})
+    public int size;
+
+    @Param({"UTF-8", "UTF-16", "ISO-8859-1"})
+    public String charset;
+
+    private File file;
+    private Charset encoding;
+
+    @Setup
+    public void setUp() throws IOException {
+        encoding = Charset.forName(charset);
+        file = Texts.createFile(Texts.generate(size), encoding);
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    // Lines are read one by one and concatenated (line breaks are added back)
+    @Benchmark
+    public String readLine() throws IOException {
+        final BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), encoding));
+        try {
+            final StringBuilder builder = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                builder.append(line).append('\n');
+            }
+            return builder.toString();
+        } finally {
+            reader.close();
+        }
+    }
+
+    // Chars are read in chunks into a reusable buffer
+    @Benchmark
+    public String bulkRead() throws IOException {
+        final Reader reader = new InputStreamReader(new FileInputStream(file), encoding);
+        try {
+            final StringBuilder builder = new StringBuilder();
+            final char[] chunk = new char[TextStreamLoader.CHUNK_SIZE];
+            int read;
+            while ((read = reader.read(chunk)) != -1) {
+                builder.append(chunk, 0, read);
+            }
+            return builder.toString();
+        } finally {
+            reader.close();
+        }
+    }
+
+    // Chars are delivered in pages, as displayed by the app
+    @Benchmark
+    public long pages(Blackhole blackhole) throws IOException {
+        return TextStreamLoader.load(
+                new InputStreamReader(new FileInputStream(file), encoding), blackhole::consume);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import labs.dadm.l0403_files.AtomicFileWriter;
+import labs.dadm.l0403_files.TextJournal;
+
+// Compares the cost of saving a small edit by replacing the whole file atomically
+// and by appending it to the journal of edits, for each durability policy
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SaveBenchmark {
+
+    // Number of chars in the file
+    @Param({"1024", "1048576", "16777216"})
+    public int size;
+
+    @Param({"" + AtomicFileWriter.DURABILITY_NONE, "" + AtomicFileWriter.DURABILITY_SYNC})
+    public int durability;
+
+    private StringBuilder text;
+    private File dir;
+    private File file;
+    private AtomicFileWriter writer;
+    private TextJournal journal;
+    private int edits;
+
+    @Setup
+    public void setUp() throws IOException {
+        text = new StringBuilder(Texts.generate(size));
+        dir = File.createTempFile("benchmark", "");
+        dir.delete();
+        dir.mkdir();
+        file = new File(dir, "benchmark.txt");
+        writer = new AtomicFileWriter(0);
+        writer.write(file, text, AtomicFileWriter.DURABILITY_NONE);
+        journal = new TextJournal(new File(dir, "journal.txt"), writer, 0.5, 64 * 1024);
+        journal.save(text, AtomicFileWriter.DURABILITY_NONE);
+        journal.compact();
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (File child : dir.listFiles()) {
+            child.delete();
+        }
+        dir.delete();
+    }
+
+    // Changes a single char in the middle of the text
+    private CharSequence edit() {
+        text.setCharAt(size / 2, (char) ('a' + edits++ % 26));
+        return text;
+    }
+
+    @Benchmark
+    public void atomicWrite() throws IOException {
+        writer.write(file, edit(), durability);
+    }
+
+    @Benchmark
+    public void journal() throws IOException {
+        if (journal.save(edit(), durability)) {
+            journal.compact();
+        }
+    }
+}
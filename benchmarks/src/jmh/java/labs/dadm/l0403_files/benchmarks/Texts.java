@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+// Generates the texts used by the benchmarks
+final class Texts {
+
+    // Line repeated to generate the texts (only chars that every charset can encode)
+    private static final String LINE =
+            "Lorem ipsum dolor sit amet, consectetur adipiscing elit. Àéíóú ñç 0123456789\n";
+
+    private Texts() {
+    }
+
+    // Gets a text of exactly the given number of chars, split in lines
+    static String generate(int chars) {
+        final StringBuilder builder = new StringBuilder(chars + LINE.length());
+        while (builder.length() < chars) {
+            builder.append(LINE);
+        }
+        builder.setLength(chars);
+        return builder.toString();
+    }
+
+    // Creates a temporary file with the text encoded in the given charset
+    static File createFile(String text, Charset charset) throws IOException {
+        final File file = File.createTempFile("benchmark", ".txt");
+        file.deleteOnExit();
+        final FileOutputStream fos = new FileOutputStream(file);
+        try {
+            fos.write(text.getBytes(charset));
+        } finally {
+            fos.close();
+        }
+        return file;
+    }
+}
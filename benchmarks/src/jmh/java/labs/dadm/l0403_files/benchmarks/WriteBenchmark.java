@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2026. David de Andrés and Juan Carlos Ruiz, DISCA - UPV, Development of apps for mobile devices.
+ */
+
+package labs.dadm.l0403_files.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.util.concurrent.TimeUnit;
+
+import labs.dadm.l0403_files.TextStreamLoader;
+
+// Compares the strategies to write a whole text file in different charsets
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class WriteBenchmark {
+
+    // Number of chars in the file
+    @Param({"1024", "1048576", "16777216"})
+    public int size;
+
+    @Param({"UTF-8", "UTF-16", "ISO-8859-1"})
+    public String charset;
+
+    private String text;
+    private Charset encoding;
+    private File file;
+    // Encoder and buffers reused by every write
+    private CharsetEncoder encoder;
+    private ByteBuffer heapBuffer;
+    private ByteBuffer directBuffer;
+
+    @Setup
+    public void setUp() throws IOException {
+        text = Texts.generate(size);
+        encoding = Charset.forName(charset);
+        file = File.createTempFile("benchmark", ".txt");
+        file.deleteOnExit();
+        encoder = encoding.newEncoder();
+        final int capacity = (int) (TextStreamLoader.CHUNK_SIZE * encoder.maxBytesPerChar()) + 16;
+        heapBuffer = ByteBuffer.allocate(capacity);
+        directBuffer = ByteBuffer.allocateDirect(capacity);
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    // The Writer encodes the text (as FileWriter does, but with the given charset)
+    @Benchmark
+    public void writer() throws IOException {
+        final Writer writer = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file), encoding));
+        try {
+            writer.write(text);
+            writer.flush();
+        } finally {
+            writer.close();
+        }
+    }
+
+    // The whole text is encoded at once and written as bytes
+    @Benchmark
+    public void getBytes() throws IOException {
+        final FileOutputStream fos = new FileOutputStream(file);
+        try {
+            fos.write(text.getBytes(encoding));
+        } finally {
+            fos.close();
+        }
+    }
+
+    // The text is encoded in chunks by a reusable encoder and written through the stream
+    @Benchmark
+    public void encoder() throws IOException {
+        final FileOutputStream fos = new FileOutputStream(file);
+        try {
+            final CharBuffer chars = CharBuffer.wrap(text);
+            encoder.reset();
+            CoderResult result;
+            do {
+                result = encoder.encode(chars, heapBuffer, true);
+                fos.write(heapBuffer.array(), 0, heapBuffer.position());
+                heapBuffer.clear();
+            } while (result.isOverflow());
+            while (encoder.flush(heapBuffer).isOverflow()) {
+                fos.write(heapBuffer.array(), 0, heapBuffer.position());
+                heapBuffer.clear();
+            }
+            fos.write(heapBuffer.array(), 0, heapBuffer.position());
+            heapBuffer.clear();
+        } finally {
+            fos.close();
+        }
+    }
+
+    // The text is encoded in chunks into a direct buffer and written through the channel
+    @Benchmark
+    public void channel() throws IOException {
+        final FileOutputStream fos = new FileOutputStream(file);
+        try {
+            final FileChannel channel = fos.getChannel();
+            final CharBuffer chars = CharBuffer.wrap(text);
+            encoder.reset();
+            CoderResult result;
+            do {
+                result = encoder.encode(chars, directBuffer, true);
+                drain(channel);
+            } while (result.isOverflow());
+            while (encoder.flush(directBuffer).isOverflow()) {
+                drain(channel);
+            }
+            drain(channel);
+        } finally {
+            fos.close();
+        }
+    }
+
+    // Writes all the bytes in the direct buffer to the channel
+    private void drain(FileChannel channel) throws IOException {
+        directBuffer.flip();
+        while (directBuffer.hasRemaining()) {
+            channel.write(directBuffer);
+        }
+        directBuffer.clear();
+    }
+}